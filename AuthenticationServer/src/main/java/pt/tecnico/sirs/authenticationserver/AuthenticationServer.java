@@ -2,6 +2,11 @@ package pt.tecnico.sirs.authenticationserver;
 
 import io.grpc.*;
 import pt.tecnico.sirs.authenticationserver.domain.AuthenticationServerState;
+import pt.tecnico.sirs.telemetry.MetricsInterceptor;
+import pt.tecnico.sirs.telemetry.MetricsServer;
+import pt.tecnico.sirs.telemetry.Tracing;
+import pt.tecnico.sirs.telemetry.TracingServerInterceptor;
+import pt.tecnico.sirs.telemetry.logging.Log;
 
 import java.io.*;
 import java.util.List;
@@ -12,9 +17,11 @@ public class AuthenticationServer {
     private final boolean debug;
     private final AuthenticationServerState state;
     private final Server server;
+    private final MetricsServer metricsServer;
 
     public AuthenticationServer(List<String> args, boolean debug) throws IOException {
         this.debug = debug;
+        Tracing.fromEnvironment(args.get(1));
 
         final String authenticationServerAddress = args.get(2);
         final int authenticationServerPort = Integer.parseInt(args.get(3));
@@ -26,13 +33,17 @@ public class AuthenticationServer {
 
         TlsServerCredentials.Builder tlsBuilder = TlsServerCredentials.newBuilder()
                 .keyManager(new File(args.get(4)), new File(args.get(5)));
-        this.server = Grpc.newServerBuilderForPort(authenticationServerPort, tlsBuilder.build()).addService(AuthenticationServerService)
+        this.server = Grpc.newServerBuilderForPort(authenticationServerPort, tlsBuilder.build())
+                .addService(ServerInterceptors.intercept(AuthenticationServerService, new MetricsInterceptor(), new TracingServerInterceptor()))
                 .build();
+
+        this.metricsServer = MetricsServer.fromEnvironment();
     }
 
     private void serverStartup() throws IOException {
         if (debug) System.out.println("Server: Starting up '" + state.getAuthenticationServerService() + "''s '" + state.getServerName() + "' server at " + state.getServerAddress()  + ":" + state.getServerPort() + ".");
         server.start();
+        if (metricsServer != null && debug) System.out.println("Server: metrics at http://localhost:" + metricsServer.getPort() + "/metrics");
         state.register();
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
@@ -47,6 +58,8 @@ public class AuthenticationServer {
         if (debug) System.out.println("Server: Deleting '" + state.getAuthenticationServerService() + "''s '" + state.getServerName() + "' server at " + state.getServerAddress() + ".");
         System.out.println("Shutting down.");
         state.delete();
+        if (metricsServer != null) metricsServer.close();
+        Tracing.tracer().close();
         if (server.awaitTermination(1, TimeUnit.SECONDS))
             server.shutdownNow();
     }
@@ -61,7 +74,8 @@ public class AuthenticationServer {
 
     public static void main(String[] args) throws Exception {
         System.out.println("Authentication Server");
-        final boolean debug = true;
+        // Debug output only when asked for, e.g. log-levels=authentication=debug
+        final boolean debug = Log.logger("authentication").isDebugEnabled();
 
         if (
             System.getenv("service-name") == null ||
@@ -5,14 +5,20 @@ import io.grpc.stub.StreamObserver;
 import pt.tecnico.sirs.contract.authenticationserver.AuthenticationServer.*;
 import pt.tecnico.sirs.contract.authenticationserver.AuthenticationServerServiceGrpc.AuthenticationServerServiceImplBase;
 import pt.tecnico.sirs.authenticationserver.domain.AuthenticationServerState;
+import pt.tecnico.sirs.telemetry.Metrics;
+import pt.tecnico.sirs.telemetry.Stage;
+import pt.tecnico.sirs.telemetry.logging.Log;
+import pt.tecnico.sirs.telemetry.logging.Logger;
 import pt.tecnico.sirs.utils.Utils;
 
 import javax.json.*;
 import java.time.OffsetDateTime;
 
 public final class AuthenticationServerImpl extends AuthenticationServerServiceImplBase {
+    private static final Logger log = Log.logger("authentication");
     private final boolean debug;
     private final AuthenticationServerState state;
+    private final Metrics metrics = Metrics.registry();
 
     public AuthenticationServerImpl(AuthenticationServerState state, boolean debug) {
         this.debug = debug;
@@ -26,16 +32,21 @@ public final class AuthenticationServerImpl extends AuthenticationServerServiceI
     @Override
     public void authenticate(AuthenticateRequest request, StreamObserver<AuthenticateResponse> responseObserver) {
         try {
-            if (isDebug()) System.out.println("\tAuthenticationServerImpl: deserialize and parse request");
+            log.debug("deserialize and parse request");
+            long parse = Metrics.now();
             JsonObject requestJson = Utils.deserializeJson(request.getRequest().toByteArray());
             String source = requestJson.getString("source");
             String target = requestJson.getString("target");
             OffsetDateTime timestamp = OffsetDateTime.parse(requestJson.getString("timestampString"));
+            metrics.record(Stage.PARSE, parse);
 
-            if (isDebug()) System.out.println("\tAuthenticationServerImpl: delegate");
+            log.debug("delegate");
+            // Issuing the ticket is generating the session key and encrypting it for both parties
+            long encrypt = Metrics.now();
             byte[] ticket = state.authenticate(source, target, timestamp);
+            metrics.record(Stage.ENCRYPT, encrypt);
 
-            if (isDebug()) System.out.println("\tAuthenticationServerImpl: serialize and send response");
+            log.debug("serialize and send response");
             responseObserver.onNext(AuthenticateResponse.newBuilder().setResponse(ByteString.copyFrom(ticket)).build());
             responseObserver.onCompleted();
         } catch (Exception e) {
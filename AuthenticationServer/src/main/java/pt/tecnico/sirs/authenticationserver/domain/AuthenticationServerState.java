@@ -1,10 +1,13 @@
 package pt.tecnico.sirs.authenticationserver.domain;
 
 import pt.tecnico.sirs.authenticationserver.grpc.AuthenticationService;
+import pt.tecnico.sirs.telemetry.logging.Log;
+import pt.tecnico.sirs.telemetry.logging.Logger;
 
 import java.time.OffsetDateTime;
 
 public class AuthenticationServerState {
+    private static final Logger log = Log.logger("authentication");
 
     public static class AuthenticationServerStateBuilder {
         private final boolean debug;
@@ -62,7 +65,7 @@ public class AuthenticationServerState {
     }
 
     public synchronized byte[] authenticate(String source, String target, OffsetDateTime timestamp) {
-        if (isDebug()) System.out.printf("\t\tAuthenticationServerState: authenticating %s for %s\n", target, source);
+        log.debug("authenticating {} for {}", target, source);
         try {
             return service.authenticate(source, target, timestamp);
         } catch (Exception e) {
@@ -2,8 +2,10 @@ package pt.tecnico.sirs.authenticationserver.grpc;
 
 import pt.tecnico.sirs.cryptology.Operations;
 import pt.tecnico.sirs.cryptology.Base;
+import pt.tecnico.sirs.utils.ReplayWindow;
 import pt.tecnico.sirs.utils.Utils;
-import pt.tecnico.sirs.utils.exceptions.ReplayAttackException;
+import pt.tecnico.sirs.telemetry.logging.Log;
+import pt.tecnico.sirs.telemetry.logging.Logger;
 
 import javax.json.Json;
 import java.nio.ByteBuffer;
@@ -11,6 +13,7 @@ import java.time.OffsetDateTime;
 import java.util.*;
 
 public class AuthenticationService {
+    private static final Logger log = Log.logger("authentication");
 
     public static class AuthenticationServerServiceBuilder {
 
@@ -43,7 +46,7 @@ public class AuthenticationService {
     private final Integer port;
     private final String service;
     private final String name;
-    private final List<OffsetDateTime> timestamps = new ArrayList<>();
+    private final ReplayWindow timestamps = new ReplayWindow();
 
     public AuthenticationService(AuthenticationServerServiceBuilder builder) {
         this.debug = builder.debug;
@@ -73,27 +76,17 @@ public class AuthenticationService {
         return this.debug;
     }
 
-    public List<OffsetDateTime> getTimestamps() {
+    public ReplayWindow getTimestamps() {
         return this.timestamps;
     }
 
-    public void addTimestamp(OffsetDateTime timestamp) {
-        this.timestamps.add(timestamp);
-    }
-
-    public boolean oldTimestampString(OffsetDateTime timestamp) {
-        return getTimestamps().contains(timestamp);
-    }
-
     public synchronized byte[] authenticate(String source, String target, OffsetDateTime timestamp) throws Exception {
-        if (isDebug()) System.out.printf("\t\t\tAuthenticationService: authenticating %s for %s\n", target, source);
-        if (isDebug()) System.out.printf("\t\t\tAuthenticationService: validating timestamp %s\n", timestamp.toString());
+        log.debug("authenticating {} for {}", target, source);
+        log.debug("validating timestamp {}", timestamp);
 
-        if (oldTimestampString(timestamp))
-            throw new ReplayAttackException();
-        addTimestamp(timestamp);
+        getTimestamps().accept(timestamp);
 
-        if (isDebug()) System.out.println("\t\t\tAuthenticationService: generating session key");
+        log.debug("generating session key");
 
         String sessionKeyHex = Utils.byteToHex(Operations.generateSessionKey());
 
@@ -104,9 +97,9 @@ public class AuthenticationService {
                 Utils.byteToHex(Operations.hash(ByteBuffer.allocate(Integer.BYTES).putInt(new Random().nextInt()).array()))
         ));
 
-        if (isDebug()) System.out.println("\t\t\tAuthenticationService: generating target ticket");
+        log.debug("generating target ticket");
 
-        if (isDebug()) System.out.println("\t\t\tAuthenticationService: serializing ticket");
+        log.debug("serializing ticket");
         return Operations.encryptData(
             Base.readSecretKey("resources/crypto/client/symmetricKey"),
             Utils.serializeJson(
@@ -126,10 +119,10 @@ public class AuthenticationService {
     }
 
     public void register() {
-        if (isDebug()) System.out.println("\t\t\tAuthenticationService: register server");
+        log.debug("register server");
     }
 
     public void delete() {
-        if (isDebug()) System.out.println("\t\t\tAuthenticationService: delete server");
+        log.debug("delete server");
     }
 }
@@ -2,6 +2,12 @@ package pt.tecnico.sirs.bankserver;
 
 import io.grpc.*;
 import pt.tecnico.sirs.bankserver.domain.BankState;
+import pt.tecnico.sirs.telemetry.Metrics;
+import pt.tecnico.sirs.telemetry.MetricsInterceptor;
+import pt.tecnico.sirs.telemetry.MetricsServer;
+import pt.tecnico.sirs.telemetry.Tracing;
+import pt.tecnico.sirs.telemetry.TracingServerInterceptor;
+import pt.tecnico.sirs.telemetry.logging.Log;
 
 import java.io.*;
 import java.util.List;
@@ -12,31 +18,43 @@ public class BankServer {
     private final boolean debug;
     private final BankState state;
     private final Server server;
+    private final MetricsServer metricsServer;
 
     public BankServer(List<String> args, boolean debug) throws IOException {
         this.debug = debug;
+        Tracing.fromEnvironment(args.get(1));
 
         final String bankAddress = args.get(2);
         final int bankPort = Integer.parseInt(args.get(3));
         final String databaseAddress = args.get(4);
         final int databasePort = Integer.parseInt(args.get(5));
 
+        final int maxInFlight = System.getenv("max-in-flight") == null
+                ? BankState.DEFAULT_MAX_IN_FLIGHT
+                : Integer.parseInt(System.getenv("max-in-flight"));
+
         this.state = new BankState.BankStateBuilder(
                 args.get(0), args.get(1), bankAddress, bankPort, databaseAddress, databasePort, args.get(6), args.get(7), args.get(8), debug
-        ).build();
+        ).maxInFlight(maxInFlight).build();
 
         final BindableService bankingService = new BankServerImpl(state, debug);
 
         TlsServerCredentials.Builder tlsBuilder = TlsServerCredentials.newBuilder()
                 .keyManager(new File(args.get(7)), new File(args.get(8)));
-        this.server = Grpc.newServerBuilderForPort(bankPort, tlsBuilder.build()).addService(bankingService)
+        this.server = Grpc.newServerBuilderForPort(bankPort, tlsBuilder.build())
+                .addService(ServerInterceptors.intercept(bankingService, new MetricsInterceptor(), new TracingServerInterceptor()))
                 .build();
+
+        this.metricsServer = MetricsServer.fromEnvironment();
+        if (metricsServer != null)
+            Metrics.registry().gauge("bank_admitted_in_flight", "Calls holding an in-flight permit", state::getInFlight);
     }
 
     private void serverStartup() throws IOException {
         if (debug) System.out.println("Server: Starting up '" + state.getBankingService() + "''s '" + state.getServerName() + "' server at " + state.getServerAddress()  + ":" + state.getServerPort() + ".");
         state.register();
         server.start();
+        if (metricsServer != null && debug) System.out.println("Server: metrics at http://localhost:" + metricsServer.getPort() + "/metrics");
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
                 serverShutdown();
@@ -49,6 +67,8 @@ public class BankServer {
     private void serverShutdown() throws InterruptedException {
         if (debug) System.out.println("Server: Deleting '" + state.getBankingService() + "''s '" + state.getServerName() + "' server at " + state.getServerAddress() + ".");
         state.delete();
+        if (metricsServer != null) metricsServer.close();
+        Tracing.tracer().close();
         System.out.println("Shutting down.");
         if (server.awaitTermination(1, TimeUnit.SECONDS))
             server.shutdownNow();
@@ -64,7 +84,8 @@ public class BankServer {
 
     public static void main(String[] args) throws Exception {
         System.out.println("BlingBank Server");
-        final boolean debug = true;
+        // Debug output only when asked for, e.g. log-levels=bank=debug
+        final boolean debug = Log.logger("bank").isDebugEnabled();
 
         if (
             System.getenv("service-name") == null ||
@@ -5,8 +5,13 @@ import io.grpc.stub.StreamObserver;
 import pt.tecnico.sirs.contract.bankserver.BankServer.*;
 import pt.tecnico.sirs.contract.bankserver.BankingServiceGrpc.BankingServiceImplBase;
 import pt.tecnico.sirs.bankserver.domain.BankState;
+import pt.tecnico.sirs.telemetry.logging.Log;
+import pt.tecnico.sirs.telemetry.logging.Logger;
+
+import java.util.function.Function;
 
 public final class BankServerImpl extends BankingServiceImplBase {
+    private static final Logger log = Log.logger("bank");
     private final boolean debug;
     private final BankState state;
 
@@ -19,126 +24,106 @@ public final class BankServerImpl extends BankingServiceImplBase {
         return debug;
     }
 
+    // Completes the client call from the asynchronous database response
+    private <RespT> StreamObserver<ByteString> respond(StreamObserver<RespT> responseObserver, Function<ByteString, RespT> build) {
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(ByteString response) {
+                log.debug("serialize and send response");
+                responseObserver.onNext(build.apply(response));
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                log.warn("database call failed: {}", t);
+                responseObserver.onError(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
     @Override
     public void authenticate(AuthenticateRequest request, StreamObserver<AuthenticateResponse> responseObserver) {
-        try {
-            if (isDebug()) System.out.println("\tBankServerImpl: parse and delegate request");
-            byte[] rawResponse = state.authenticate(request.getRequest().toByteArray());
-
-            if (isDebug()) System.out.println("\tBankServerImpl: serialize and send response");
-            responseObserver.onNext(AuthenticateResponse.newBuilder().setResponse(ByteString.copyFrom(rawResponse)).build());
-            responseObserver.onCompleted();
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            responseObserver.onError(e);
-        }
+        log.debug("parse and delegate request");
+        state.authenticate(request.getRequest(), respond(
+                responseObserver,
+                response -> AuthenticateResponse.newBuilder().setResponse(response).build()
+        ));
     }
 
     @Override
     public void stillAlive(StillAliveRequest request, StreamObserver<StillAliveResponse> responseObserver) {
-        try {
-            if (isDebug()) System.out.println("\tBankServerImpl: parse and delegate request");
-            byte[] rawResponse = state.stillAlive(request.getRequest().toByteArray());
-
-            if (isDebug()) System.out.println("\tBankServerImpl: serialize and send response");
-            responseObserver.onNext(StillAliveResponse.newBuilder().setResponse(ByteString.copyFrom(rawResponse)).build());
-            responseObserver.onCompleted();
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            responseObserver.onError(e);
-        }
+        log.debug("parse and delegate request");
+        state.stillAlive(request.getRequest(), respond(
+                responseObserver,
+                response -> StillAliveResponse.newBuilder().setResponse(response).build()
+        ));
     }
 
-    
     @Override
     public void createAccount(CreateAccountRequest request, StreamObserver<CreateAccountResponse> responseObserver) {
-        try {
-            if (isDebug()) System.out.println("\tBankServerImpl: decrypt deserialize parse request");
-            state.createAccount(request.getRequest().toByteArray());
-
-            if (isDebug()) System.out.println("\tBankServerImpl: encrypt serialize and send response");
-            responseObserver.onNext(CreateAccountResponse.newBuilder().build());
-            responseObserver.onCompleted();
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            responseObserver.onError(e);
-        }
+        log.debug("parse and delegate request");
+        state.createAccount(request.getRequest(), respond(
+                responseObserver,
+                ignored -> CreateAccountResponse.newBuilder().build()
+        ));
     }
 
     @Override
     public void deleteAccount(DeleteAccountRequest request, StreamObserver<DeleteAccountResponse> responseObserver) {
-        try {
-            if (isDebug()) System.out.println("\tBankServerImpl: decrypt deserialize parse request");
-            state.deleteAccount(request.getRequest().toByteArray());
-
-            if (isDebug()) System.out.println("\tBankServerImpl: encrypt serialize and send response");
-            responseObserver.onNext(DeleteAccountResponse.newBuilder().build());
-            responseObserver.onCompleted();
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            responseObserver.onError(e);
-        }
+        log.debug("parse and delegate request");
+        state.deleteAccount(request.getRequest(), respond(
+                responseObserver,
+                ignored -> DeleteAccountResponse.newBuilder().build()
+        ));
     }
 
     @Override
     public void balance(BalanceRequest request, StreamObserver<BalanceResponse> responseObserver) {
-        try {
-            if (isDebug()) System.out.println("\tBankServerImpl: decrypt deserialize parse request");
-            responseObserver.onNext(BalanceResponse.newBuilder().setResponse(
-                ByteString.copyFrom(
-                    state.balance(request.getRequest().toByteArray())
-            )).build());
-            responseObserver.onCompleted();
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            responseObserver.onError(e);
-        }
+        log.debug("parse and delegate request");
+        state.balance(request.getRequest(), respond(
+                responseObserver,
+                response -> BalanceResponse.newBuilder().setResponse(response).build()
+        ));
     }
 
     @Override
     public void addExpense(AddExpenseRequest request, StreamObserver<AddExpenseResponse> responseObserver) {
-        try {
-            if (isDebug()) System.out.println("\tBankServerImpl: decrypt deserialize parse request");
-            if (isDebug()) System.out.println("\tBankServerImpl: delegate request");
-            state.addExpense(request.getRequest().toByteArray());
-
-            if (isDebug()) System.out.println("\tBankServerImpl: encrypt serialize and send response");
-            responseObserver.onNext(AddExpenseResponse.newBuilder().build());
-            responseObserver.onCompleted();
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            responseObserver.onError(e);
-        }
+        log.debug("parse and delegate request");
+        state.addExpense(request.getRequest(), respond(
+                responseObserver,
+                ignored -> AddExpenseResponse.newBuilder().build()
+        ));
     }
 
     @Override
     public void getMovements(GetMovementsRequest request, StreamObserver<GetMovementsResponse> responseObserver) {
-        try {
-            if (isDebug()) System.out.println("\tBankServerImpl: decrypt deserialize parse request");
-            responseObserver.onNext(GetMovementsResponse.newBuilder().setResponse(
-                ByteString.copyFrom(
-                    state.getMovements(request.getRequest().toByteArray()))
-            ).build());
-            responseObserver.onCompleted();
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            responseObserver.onError(e);
-        }
+        log.debug("parse and delegate request");
+        state.getMovements(request.getRequest(), respond(
+                responseObserver,
+                response -> GetMovementsResponse.newBuilder().setResponse(response).build()
+        ));
+    }
+
+    @Override
+    public void streamMovements(StreamMovementsRequest request, StreamObserver<StreamMovementsResponse> responseObserver) {
+        log.debug("parse and delegate request");
+        state.streamMovements(request.getRequest(), respond(
+                responseObserver,
+                response -> StreamMovementsResponse.newBuilder().setResponse(response).build()
+        ));
     }
 
     @Override
     public void orderPayment(OrderPaymentRequest request, StreamObserver<OrderPaymentResponse> responseObserver) {
-        try {
-            if (isDebug()) System.out.println("\tBankServerImpl: decrypt deserialize parse request");
-
-            state.orderPayment(request.getRequest().toByteArray());
-
-            if (isDebug()) System.out.println("\tBankServerImpl: encrypt serialize and send response");
-            responseObserver.onNext(OrderPaymentResponse.newBuilder().build());
-            responseObserver.onCompleted();
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            responseObserver.onError(e);
-        }
+        log.debug("parse and delegate request");
+        state.orderPayment(request.getRequest(), respond(
+                responseObserver,
+                ignored -> OrderPaymentResponse.newBuilder().build()
+        ));
     }
 }
@@ -1,15 +1,27 @@
 package pt.tecnico.sirs.bankserver.domain;
 
+import com.google.protobuf.ByteString;
+import io.grpc.Channel;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
 import pt.tecnico.sirs.bankserver.grpc.BankService;
+import pt.tecnico.sirs.telemetry.logging.Log;
+import pt.tecnico.sirs.telemetry.logging.Logger;
 
 import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class BankState {
+    private static final Logger log = Log.logger("bank");
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
 
     public static class BankStateBuilder {
         private final boolean debug;
         private final BankService service;
+        private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        private boolean serialized;
 
         public BankStateBuilder(
                 String serverService,
@@ -38,6 +50,37 @@ public class BankState {
             ).build();
         }
 
+        public BankStateBuilder(
+                String serverService,
+                String serverName,
+                String host,
+                Integer port,
+                Channel databaseChannel,
+                boolean debug
+        ) {
+            this.debug = debug;
+            this.service = new BankService.BankServiceBuilder(
+                    serverService,
+                    serverName,
+                    host,
+                    port,
+                    databaseChannel,
+                    debug
+            ).build();
+        }
+
+        public BankStateBuilder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        // One call at a time, each waiting for the previous one to complete, as the bank ran before it forwarded
+        // calls asynchronously; only useful as a baseline to measure against
+        public BankStateBuilder serialized(boolean serialized) {
+            this.serialized = serialized;
+            return this;
+        }
+
         public BankState build() {
             return new BankState(this);
         }
@@ -46,10 +89,16 @@ public class BankState {
 
     private final boolean debug;
     private final BankService service;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final boolean serialized;
 
     private BankState(BankStateBuilder builder) {
         this.debug = builder.debug;
         this.service = builder.service;
+        this.serialized = builder.serialized;
+        this.maxInFlight = serialized ? 1 : builder.maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight, serialized);
     }
 
     public String getBankingService() {
@@ -68,109 +117,160 @@ public class BankState {
       return service.getServerName();
     }
 
+    public int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
     public boolean isDebug() {
         return debug;
     }
     
-    public synchronized byte[] authenticate(byte[] request) {
+    // Takes an in-flight permit for the lifetime of one forwarded call, or fails fast when the bank is saturated;
+    // a serialized bank waits for the permit instead
+    private StreamObserver<ByteString> admit(StreamObserver<ByteString> responseObserver) {
+        if (serialized) {
+            inFlight.acquireUninterruptibly();
+        } else if (!inFlight.tryAcquire()) {
+            responseObserver.onError(
+                    Status.RESOURCE_EXHAUSTED.withDescription("Too many requests in flight").asRuntimeException()
+            );
+            return null;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(ByteString response) {
+                responseObserver.onNext(response);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                if (released.compareAndSet(false, true)) inFlight.release();
+                responseObserver.onError(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                if (released.compareAndSet(false, true)) inFlight.release();
+                responseObserver.onCompleted();
+            }
+        };
+    }
+
+    public void authenticate(ByteString request, StreamObserver<ByteString> responseObserver) {
+        StreamObserver<ByteString> admitted = admit(responseObserver);
+        if (admitted == null) return;
         try {
-            if (isDebug()) System.out.println("\t\tBankState: delegate request");
-            byte[] response = service.authenticate(request);
-            if (isDebug()) System.out.println("\t\tBankState: return");
-            return response;
+            log.debug("delegate request");
+            service.authenticate(request, admitted);
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            admitted.onError(e);
         }
     }
 
-    public synchronized byte[] stillAlive(byte[] request) {
+    public void stillAlive(ByteString request, StreamObserver<ByteString> responseObserver) {
+        StreamObserver<ByteString> admitted = admit(responseObserver);
+        if (admitted == null) return;
         try {
-            if (isDebug()) System.out.println("\t\tBankState: delegate request");
-            byte[] response = service.stillAlive(request);
-            if (isDebug()) System.out.println("\t\tBankState: return");
-            return response;
+            log.debug("delegate request");
+            service.stillAlive(request, admitted);
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            admitted.onError(e);
         }
     }
 
-    public synchronized void createAccount(byte[] request) {
+    public void createAccount(ByteString request, StreamObserver<ByteString> responseObserver) {
+        StreamObserver<ByteString> admitted = admit(responseObserver);
+        if (admitted == null) return;
         try {
-            if (isDebug()) System.out.println("\t\tBankState: delegate request");
-            service.createAccount(request);
-            if (isDebug()) System.out.println("\t\tBankState: return");
+            log.debug("delegate request");
+            service.createAccount(request, admitted);
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            admitted.onError(e);
         }
     }
 
-    public synchronized void deleteAccount(byte[] request) {
+    public void deleteAccount(ByteString request, StreamObserver<ByteString> responseObserver) {
+        StreamObserver<ByteString> admitted = admit(responseObserver);
+        if (admitted == null) return;
         try {
-            if (isDebug()) System.out.println("\t\tBankState: delegate request");
-            service.deleteAccount(request);
-            if (isDebug()) System.out.println("\t\tBankState: return");
+            log.debug("delegate request");
+            service.deleteAccount(request, admitted);
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            admitted.onError(e);
         }
     }
 
-    public synchronized byte[] balance(byte[] request) {
+    public void balance(ByteString request, StreamObserver<ByteString> responseObserver) {
+        StreamObserver<ByteString> admitted = admit(responseObserver);
+        if (admitted == null) return;
         try {
-            if (isDebug()) System.out.println("\t\tBankState: delegate request");
-            byte[] response = service.balance(request);
-            if (isDebug()) System.out.println("\t\tBankState: return");
-            return response;
+            log.debug("delegate request");
+            service.balance(request, admitted);
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            admitted.onError(e);
         }
     }
 
-    public synchronized void addExpense(byte[] request) {
+    public void addExpense(ByteString request, StreamObserver<ByteString> responseObserver) {
+        StreamObserver<ByteString> admitted = admit(responseObserver);
+        if (admitted == null) return;
         try {
-            if (isDebug()) System.out.println("\t\tBankState: delegate request");
-            service.addExpense(request);
-            if (isDebug()) System.out.println("\t\tBankState: return");
+            log.debug("delegate request");
+            service.addExpense(request, admitted);
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            admitted.onError(e);
         }
     }
 
-    public synchronized byte[] getMovements(byte[] request) {
+    public void getMovements(ByteString request, StreamObserver<ByteString> responseObserver) {
+        StreamObserver<ByteString> admitted = admit(responseObserver);
+        if (admitted == null) return;
         try {
-            if (isDebug()) System.out.println("\t\tBankState: delegate request");
-            byte[] response = service.getMovements(request);
-            if (isDebug()) System.out.println("\t\tBankState: return");
-            return response;
+            log.debug("delegate request");
+            service.getMovements(request, admitted);
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            admitted.onError(e);
         }
     }
 
-    public synchronized void orderPayment(byte[] request) {
+    public void streamMovements(ByteString request, StreamObserver<ByteString> responseObserver) {
+        StreamObserver<ByteString> admitted = admit(responseObserver);
+        if (admitted == null) return;
         try {
-            if (isDebug()) System.out.println("\t\tBankState: delegate request");
-            service.orderPayment(request);
-            if (isDebug()) System.out.println("\t\tBankState: return");
+            log.debug("delegate request");
+            service.streamMovements(request, admitted);
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            admitted.onError(e);
+        }
+    }
+
+    public void orderPayment(ByteString request, StreamObserver<ByteString> responseObserver) {
+        StreamObserver<ByteString> admitted = admit(responseObserver);
+        if (admitted == null) return;
+        try {
+            log.debug("delegate request");
+            service.orderPayment(request, admitted);
+        } catch (Exception e) {
+            admitted.onError(e);
         }
     }
 
-    public synchronized void register() {
+    public void register() {
         try {
-            if (isDebug()) System.out.println("\t\tBankState: delegate request");
+            log.debug("delegate request");
             service.register();
-            if (isDebug()) System.out.println("\t\tBankState: return");
+            log.debug("return");
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    public synchronized void delete() {
+    public void delete() {
         try {
-            if (isDebug()) System.out.println("\t\tBankState: delegate request");
+            log.debug("delegate request");
             service.delete();
-            if (isDebug()) System.out.println("\t\tBankState: return");
+            log.debug("return");
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -2,17 +2,25 @@ package pt.tecnico.sirs.bankserver.grpc;
 
 import pt.tecnico.sirs.contract.databaseserver.DatabaseServer.*;
 import pt.tecnico.sirs.contract.databaseserver.DatabaseServiceGrpc;
-import pt.tecnico.sirs.contract.databaseserver.DatabaseServiceGrpc.DatabaseServiceBlockingStub;
+import pt.tecnico.sirs.contract.databaseserver.DatabaseServiceGrpc.DatabaseServiceStub;
+import pt.tecnico.sirs.telemetry.Metrics;
+import pt.tecnico.sirs.telemetry.Stage;
+import pt.tecnico.sirs.telemetry.TracingClientInterceptor;
+import pt.tecnico.sirs.telemetry.logging.Log;
+import pt.tecnico.sirs.telemetry.logging.Logger;
 
 import com.google.protobuf.ByteString;
 import io.grpc.Channel;
-import io.grpc.ChannelCredentials;
+import io.grpc.ClientInterceptors;
 import io.grpc.Grpc;
 import io.grpc.TlsChannelCredentials;
+import io.grpc.stub.StreamObserver;
 import java.io.File;
 import java.io.IOException;
+import java.util.function.Function;
 
 public class BankService {
+    private static final Logger log = Log.logger("bank");
 
     public static class BankServiceBuilder {
 
@@ -21,7 +29,7 @@ public class BankService {
         private final Integer port;
         private final String service;
         private final String name;
-        private final DatabaseServiceBlockingStub stub;
+        private final DatabaseServiceStub stub;
         public BankServiceBuilder(
                 String service,
                 String qualifier,
@@ -34,21 +42,38 @@ public class BankService {
                 String connectionKeyPath,
                 boolean debug
         ) throws IOException {
+            this(
+                    service,
+                    qualifier,
+                    address,
+                    port,
+                    Grpc.newChannelBuilderForAddress(
+                            databaseHost,
+                            databasePort,
+                            TlsChannelCredentials.newBuilder()
+                                    .trustManager(new File(trustChainPath))
+                                    .keyManager(new File(certPath), new File(connectionKeyPath))
+                                    .build()
+                    ).build(),
+                    debug
+            );
+        }
+
+        // Forwards over a channel built elsewhere, e.g. an in-process one to a database in the same JVM
+        public BankServiceBuilder(
+                String service,
+                String qualifier,
+                String address,
+                Integer port,
+                Channel databaseChannel,
+                boolean debug
+        ) {
             this.debug = debug;
             this.address = address;
             this.port = port;
             this.service = service;
             this.name = qualifier;
-            final ChannelCredentials credentials = TlsChannelCredentials.newBuilder()
-                    .trustManager(new File(trustChainPath))
-                    .keyManager(new File(certPath), new File(connectionKeyPath))
-                    .build();
-            final Channel channel = Grpc.newChannelBuilderForAddress(
-                    databaseHost,
-                    databasePort,
-                    credentials
-            ).build();
-            this.stub = DatabaseServiceGrpc.newBlockingStub(channel);
+            this.stub = DatabaseServiceGrpc.newStub(ClientInterceptors.intercept(databaseChannel, new TracingClientInterceptor()));
         }
 
         public BankService build() {
@@ -61,7 +86,7 @@ public class BankService {
     private final Integer port;
     private final String service;
     private final String name;
-    private final DatabaseServiceBlockingStub stub;
+    private final DatabaseServiceStub stub;
 
     public BankService(BankServiceBuilder builder) {
         this.debug = builder.debug;
@@ -92,71 +117,75 @@ public class BankService {
         return this.debug;
     }
 
-    public synchronized byte[] authenticate(byte[] request) {
-        if (isDebug()) System.out.println("\t\t\tBankService: call authentication stub");
-        AuthenticateResponse authenticateResponse = stub.authenticate(AuthenticateRequest.newBuilder().setRequest(
-                ByteString.copyFrom(request)
-        ).build());
-        if (isDebug()) System.out.println("\t\t\tBankService: return response");
-        return authenticateResponse.getResponse().toByteArray();
+    // Forwards the database response payload to the caller once the asynchronous call completes
+    // Forward time runs from handing the envelope to the database stub until its call ends, attributed to the inbound RPC
+    private <RespT> StreamObserver<RespT> relay(StreamObserver<ByteString> responseObserver, Function<RespT, ByteString> payload) {
+        final String rpc = Metrics.currentRpc();
+        final long start = Metrics.now();
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(RespT response) {
+                log.debug("return response");
+                responseObserver.onNext(payload.apply(response));
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                Metrics.registry().record(rpc, Stage.FORWARD, start);
+                responseObserver.onError(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                Metrics.registry().record(rpc, Stage.FORWARD, start);
+                responseObserver.onCompleted();
+            }
+        };
     }
 
-    public synchronized byte[] stillAlive(byte[] request) {
-        if (isDebug()) System.out.println("\t\t\tBankService: call authentication stub");
-        StillAliveResponse stillAliveResponse = stub.stillAlive(StillAliveRequest.newBuilder().setRequest(
-                ByteString.copyFrom(request)
-        ).build());
-        if (isDebug()) System.out.println("\t\t\tBankService: return response");
-        return stillAliveResponse.getResponse().toByteArray();
+    public void authenticate(ByteString request, StreamObserver<ByteString> responseObserver) {
+        log.debug("call authentication stub");
+        stub.authenticate(AuthenticateRequest.newBuilder().setRequest(request).build(), relay(responseObserver, AuthenticateResponse::getResponse));
     }
 
-    public synchronized void createAccount(byte[] request) {
-        if (isDebug()) System.out.println("\t\t\tBankService: parse serialize and encrypt request");
-
-        CreateAccountResponse ignored = stub.createAccount(CreateAccountRequest.newBuilder().setRequest(
-                ByteString.copyFrom(request)
-        ).build());
+    public void stillAlive(ByteString request, StreamObserver<ByteString> responseObserver) {
+        log.debug("call authentication stub");
+        stub.stillAlive(StillAliveRequest.newBuilder().setRequest(request).build(), relay(responseObserver, StillAliveResponse::getResponse));
     }
 
-    public synchronized void deleteAccount(byte[] request) {
-        if (isDebug()) System.out.println("\t\t\tBankService: parse serialize and encrypt request");
-        DeleteAccountResponse ignored = stub.deleteAccount(DeleteAccountRequest.newBuilder().setRequest(
-                ByteString.copyFrom(request)
-        ).build());
+    public void createAccount(ByteString request, StreamObserver<ByteString> responseObserver) {
+        log.debug("parse serialize and encrypt request");
+        stub.createAccount(CreateAccountRequest.newBuilder().setRequest(request).build(), relay(responseObserver, ignored -> ByteString.EMPTY));
     }
 
-    public synchronized byte[] balance(byte[] request) {
-        if (isDebug()) System.out.println("\t\t\tBankService: parse serialize and encrypt request");
-        BalanceResponse balanceResponse = stub.balance(BalanceRequest.newBuilder().setRequest(
-                ByteString.copyFrom(request)
-        ).build());
+    public void deleteAccount(ByteString request, StreamObserver<ByteString> responseObserver) {
+        log.debug("parse serialize and encrypt request");
+        stub.deleteAccount(DeleteAccountRequest.newBuilder().setRequest(request).build(), relay(responseObserver, ignored -> ByteString.EMPTY));
+    }
 
-        if (isDebug()) System.out.println("\t\t\tBankService: decrypt deserialize response");
-        return balanceResponse.getResponse().toByteArray();
+    public void balance(ByteString request, StreamObserver<ByteString> responseObserver) {
+        log.debug("parse serialize and encrypt request");
+        stub.balance(BalanceRequest.newBuilder().setRequest(request).build(), relay(responseObserver, BalanceResponse::getResponse));
     }
 
-    public synchronized void addExpense(byte[] request) {
-        if (isDebug()) System.out.println("\t\t\tBankService: parse serialize and encrypt request");
-        AddExpenseResponse ignored = stub.addExpense(AddExpenseRequest.newBuilder().setRequest(
-                ByteString.copyFrom(request)
-        ).build());
+    public void addExpense(ByteString request, StreamObserver<ByteString> responseObserver) {
+        log.debug("parse serialize and encrypt request");
+        stub.addExpense(AddExpenseRequest.newBuilder().setRequest(request).build(), relay(responseObserver, ignored -> ByteString.EMPTY));
     }
 
-    public synchronized byte[] getMovements(byte[] request) {
-        if (isDebug()) System.out.println("\t\t\tBankService: parse serialize and encrypt request");
-        GetMovementsResponse getMovementsResponse = stub.getMovements(GetMovementsRequest.newBuilder().setRequest(
-                ByteString.copyFrom(request)
-        ).build());
+    public void getMovements(ByteString request, StreamObserver<ByteString> responseObserver) {
+        log.debug("parse serialize and encrypt request");
+        stub.getMovements(GetMovementsRequest.newBuilder().setRequest(request).build(), relay(responseObserver, GetMovementsResponse::getResponse));
+    }
 
-        if (isDebug()) System.out.println("\t\t\tBankService: decrypt deserialize response");
-        return getMovementsResponse.getResponse().toByteArray();
+    public void streamMovements(ByteString request, StreamObserver<ByteString> responseObserver) {
+        log.debug("parse serialize and encrypt request");
+        stub.streamMovements(StreamMovementsRequest.newBuilder().setRequest(request).build(), relay(responseObserver, StreamMovementsResponse::getResponse));
     }
 
-    public synchronized void orderPayment(byte[] request) {
-        if (isDebug()) System.out.println("\t\t\tBankService: parse serialize and encrypt request");
-        OrderPaymentResponse ignored = stub.orderPayment(OrderPaymentRequest.newBuilder().setRequest(
-                ByteString.copyFrom(request)
-        ).build());
+    public void orderPayment(ByteString request, StreamObserver<ByteString> responseObserver) {
+        log.debug("parse serialize and encrypt request");
+        stub.orderPayment(OrderPaymentRequest.newBuilder().setRequest(request).build(), relay(responseObserver, ignored -> ByteString.EMPTY));
     }
 
     public void register() {}
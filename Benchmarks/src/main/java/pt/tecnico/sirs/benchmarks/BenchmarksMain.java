@@ -0,0 +1,36 @@
+package pt.tecnico.sirs.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Runs the selected suites once per thread count, with the GC/allocation profiler, writing one JMH JSON result
+// file per run so results can be diffed between commits
+public class BenchmarksMain {
+
+    public static void main(String[] args) throws Exception {
+        final String include = System.getenv("benchmark-include") == null ? ".*" : System.getenv("benchmark-include");
+        final String threads = System.getenv("benchmark-threads") == null ? "1" : System.getenv("benchmark-threads");
+        final Path results = Path.of(System.getenv("benchmark-results") == null ? "target/jmh" : System.getenv("benchmark-results"));
+        Files.createDirectories(results);
+
+        for (String count : threads.split(",")) {
+            final int threadCount = "max".equalsIgnoreCase(count.trim())
+                    ? Runtime.getRuntime().availableProcessors()
+                    : Integer.parseInt(count.trim());
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threadCount)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(results.resolve("jmh-threads-" + threadCount + ".json").toString())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
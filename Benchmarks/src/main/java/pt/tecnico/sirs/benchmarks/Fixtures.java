@@ -0,0 +1,39 @@
+package pt.tecnico.sirs.benchmarks;
+
+import pt.tecnico.sirs.cryptology.Operations;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.SplittableRandom;
+
+// Key material and payloads shaped like the ones the servers use: AES-256 session keys, 16 byte IVs, RSA-2048
+final class Fixtures {
+    static final long SEED = 0x5EC0BA4CL;
+
+    private Fixtures() {}
+
+    static SecretKey sessionKey() {
+        return new SecretKeySpec(Operations.generateSessionKey(), "AES");
+    }
+
+    static byte[] iv() {
+        return bytes(16);
+    }
+
+    static KeyPair keyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    // Deterministic, so every run and every commit measures the same bytes
+    static byte[] bytes(int size) {
+        byte[] bytes = new byte[size];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < size; i++) bytes[i] = (byte) random.nextInt(256);
+        return bytes;
+    }
+}
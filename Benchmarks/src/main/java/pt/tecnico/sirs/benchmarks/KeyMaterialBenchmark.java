@@ -0,0 +1,32 @@
+package pt.tecnico.sirs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pt.tecnico.sirs.cryptology.Operations;
+
+import java.util.concurrent.TimeUnit;
+
+// Per handshake work of the authentication server, independent of any payload
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyMaterialBenchmark {
+    private byte[] secretKey;
+
+    @Setup
+    public void setup() {
+        secretKey = Operations.generateSessionKey();
+    }
+
+    @Benchmark
+    public byte[] generateIV() {
+        return Operations.generateIV(42, secretKey, "session-secret");
+    }
+
+    @Benchmark
+    public byte[] generateSessionKey() {
+        return Operations.generateSessionKey();
+    }
+}
@@ -0,0 +1,45 @@
+package pt.tecnico.sirs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pt.tecnico.sirs.telemetry.logging.Log;
+import pt.tecnico.sirs.telemetry.logging.Logger;
+import pt.tecnico.sirs.telemetry.logging.Redacted;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+// Cost a handler pays per debug line: a disabled level, an enabled one handed to the ring buffer, and the
+// synchronized printf it replaced (into a null stream, so the console itself is not measured). Run with log-file
+// set, as the exec configuration does, so enabled lines do not flood the console
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggingBenchmark {
+    private static final Logger logger = Log.logger("benchmark");
+    private final PrintStream console = new PrintStream(OutputStream.nullOutputStream());
+    private final byte[] password = Fixtures.bytes(32);
+
+    @Benchmark
+    public void disabled() {
+        logger.trace("username {}, password {}", "Alice", Redacted.of(password));
+    }
+
+    @Benchmark
+    public void asynchronous() {
+        logger.error("username {}, password {}", "Alice", Redacted.of(password));
+    }
+
+    @Benchmark
+    public void synchronizedPrintf() {
+        console.printf("\t\tUsername: %s\n\t\tPassword (Hex): %s\n", "Alice", password.length);
+    }
+
+    @TearDown
+    public void dropped() {
+        System.out.println("Log entries dropped: " + Log.getDropped());
+    }
+}
@@ -0,0 +1,98 @@
+package pt.tecnico.sirs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pt.tecnico.sirs.cryptology.Operations;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+// Symmetric and asymmetric primitives behind every envelope, from a single field to a whole statement; the fresh
+// variants look up a new engine on every call, as Operations did before it kept one per thread
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperationsBenchmark {
+    private static final String CIPHER = "AES/CBC/PKCS5Padding";
+    private static final String DIGEST = "SHA-256";
+    private static final String SIGNATURE = "SHA256withRSA";
+
+    @Param({"100", "1024", "65536", "1048576", "10485760"})
+    public int size;
+
+    private SecretKey secretKey;
+    private byte[] iv;
+    private KeyPair keyPair;
+    private byte[] message;
+    private byte[] cipherText;
+    private byte[] signature;
+
+    @Setup
+    public void setup() throws Exception {
+        secretKey = Fixtures.sessionKey();
+        iv = Fixtures.iv();
+        keyPair = Fixtures.keyPair();
+        message = Fixtures.bytes(size);
+        cipherText = Operations.encryptData(secretKey, message, iv);
+        signature = Operations.messageSignature(keyPair.getPrivate(), message);
+    }
+
+    @Benchmark
+    public byte[] encryptData() throws Exception {
+        return Operations.encryptData(secretKey, message, iv);
+    }
+
+    @Benchmark
+    public byte[] decryptData() throws Exception {
+        return Operations.decryptData(secretKey, cipherText, iv);
+    }
+
+    @Benchmark
+    public byte[] messageSignature() throws Exception {
+        return Operations.messageSignature(keyPair.getPrivate(), message);
+    }
+
+    @Benchmark
+    public boolean messageValidation() throws Exception {
+        return Operations.messageValidation(keyPair.getPublic(), message, signature);
+    }
+
+    @Benchmark
+    public byte[] freshEncryptData() throws Exception {
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new IvParameterSpec(iv));
+        return cipher.doFinal(message);
+    }
+
+    @Benchmark
+    public byte[] freshDecryptData() throws Exception {
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(iv));
+        return cipher.doFinal(cipherText);
+    }
+
+    @Benchmark
+    public byte[] freshMessageSignature() throws Exception {
+        byte[] digest = MessageDigest.getInstance(DIGEST).digest(message);
+        Signature signature = Signature.getInstance(SIGNATURE);
+        signature.initSign(keyPair.getPrivate());
+        signature.update(digest);
+        return signature.sign();
+    }
+
+    @Benchmark
+    public boolean freshMessageValidation() throws Exception {
+        byte[] digest = MessageDigest.getInstance(DIGEST).digest(message);
+        Signature verifier = Signature.getInstance(SIGNATURE);
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(digest);
+        return verifier.verify(signature);
+    }
+}
@@ -0,0 +1,151 @@
+package pt.tecnico.sirs.benchmarks;
+
+import com.google.protobuf.ByteString;
+import org.openjdk.jmh.annotations.*;
+import pt.tecnico.sirs.contract.payloads.PayloadCodec;
+import pt.tecnico.sirs.contract.payloads.Payloads.Credentials;
+import pt.tecnico.sirs.contract.payloads.Payloads.ExpensePayload;
+import pt.tecnico.sirs.contract.payloads.Payloads.PaymentPayload;
+import pt.tecnico.sirs.databaseserver.dto.MovementCursorDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementPageDto;
+import pt.tecnico.sirs.databaseserver.grpc.DatabasePayloadCodec;
+import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseServerCryptographicManager;
+import pt.tecnico.sirs.utils.Utils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// The database server's own payload codec in both negotiable formats: the movements responses it encodes, and the
+// credentials, expense and payment requests it decodes, built the way the client builds them. The encoded size of
+// each payload is printed when a trial starts
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+    private static final String USERNAME = "alice";
+    private static final String RECIPIENT = "bob";
+    private static final String AMOUNT = "1234.50";
+    private static final String DESCRIPTION = "Groceries";
+    private static final LocalDateTime DATE = LocalDateTime.of(2023, 12, 1, 10, 15, 30);
+    private static final OffsetDateTime TIMESTAMP = OffsetDateTime.of(DATE, ZoneOffset.UTC);
+
+    // Payloads never touch the key files, only the envelopes do
+    private static DatabasePayloadCodec codec() {
+        return new DatabasePayloadCodec(new DatabaseServerCryptographicManager("resources/crypto/publicKey", "resources/crypto/privateKey"));
+    }
+
+    @State(Scope.Benchmark)
+    public static class Responses {
+        @Param({"JSON", "PROTOBUF"})
+        public PayloadCodec.Format format;
+
+        @Param({"1", "100", "10000"})
+        public int movements;
+
+        private DatabasePayloadCodec codec;
+        private List<MovementDto> statement;
+        private MovementPageDto page;
+
+        @Setup
+        public void setup() {
+            codec = codec();
+            statement = new ArrayList<>(movements);
+            UUID account = UUID.randomUUID();
+            for (int i = 0; i < movements; i++)
+                statement.add(new MovementDto(UUID.randomUUID(), account, DATE.plusMinutes(i), new BigDecimal("-" + (i % 1000) + ".50"), "Movement " + i, "EUR"));
+            page = new MovementPageDto(statement, false, new MovementCursorDto(movements));
+            // Once per trial, next to the timings of the same parameters
+            System.out.printf("%nPayload size of %d movements in %s: movements %d bytes, page %d bytes%n",
+                    movements, format, codec.movements(format, statement).size(), codec.page(format, page).size());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Requests {
+        @Param({"JSON", "PROTOBUF"})
+        public PayloadCodec.Format format;
+
+        private DatabasePayloadCodec codec;
+        private ByteString credentials;
+        private ByteString expense;
+        private ByteString payment;
+
+        @Setup
+        public void setup() {
+            codec = codec();
+            byte[] password = Fixtures.bytes(32);
+            if (format == PayloadCodec.Format.PROTOBUF) {
+                Credentials caller = Credentials.newBuilder()
+                        .setUsername(USERNAME)
+                        .setPassword(ByteString.copyFrom(password))
+                        .setTimestamp(PayloadCodec.timestamp(TIMESTAMP))
+                        .build();
+                credentials = caller.toByteString();
+                expense = ExpensePayload.newBuilder()
+                        .setCredentials(caller)
+                        .setDate(PayloadCodec.timestamp(DATE))
+                        .setAmount(PayloadCodec.amount(new BigDecimal(AMOUNT)))
+                        .setDescription(DESCRIPTION)
+                        .build().toByteString();
+                payment = PaymentPayload.newBuilder()
+                        .setCredentials(caller)
+                        .setDate(PayloadCodec.timestamp(DATE))
+                        .setAmount(PayloadCodec.amount(new BigDecimal(AMOUNT)))
+                        .setDescription(DESCRIPTION)
+                        .setRecipient(RECIPIENT)
+                        .build().toByteString();
+            } else {
+                String hex = Utils.byteToHex(password);
+                credentials = json(List.of("username", "password", "timestampString"), List.of(USERNAME, hex, TIMESTAMP.toString()));
+                expense = json(
+                        List.of("username", "password", "date", "amount", "description", "timestampString"),
+                        List.of(USERNAME, hex, DATE.toString(), AMOUNT, DESCRIPTION, TIMESTAMP.toString())
+                );
+                payment = json(
+                        List.of("username", "password", "date", "amount", "description", "recipient", "timestampString"),
+                        List.of(USERNAME, hex, DATE.toString(), AMOUNT, DESCRIPTION, RECIPIENT, TIMESTAMP.toString())
+                );
+            }
+            System.out.printf("%nPayload size of requests in %s: credentials %d bytes, expense %d bytes, payment %d bytes%n",
+                    format, credentials.size(), expense.size(), payment.size());
+        }
+
+        private static ByteString json(List<String> fields, List<String> values) {
+            return ByteString.copyFrom(Utils.serializeJson(Utils.createJson(fields, values)));
+        }
+    }
+
+    @Benchmark
+    public ByteString encodeMovements(Responses responses) {
+        return responses.codec.movements(responses.format, responses.statement);
+    }
+
+    @Benchmark
+    public ByteString encodePage(Responses responses) {
+        return responses.codec.page(responses.format, responses.page);
+    }
+
+    @Benchmark
+    public DatabasePayloadCodec.Caller decodeCredentials(Requests requests) throws Exception {
+        return requests.codec.caller(requests.format, requests.credentials.asReadOnlyByteBuffer());
+    }
+
+    @Benchmark
+    public DatabasePayloadCodec.Expense decodeExpense(Requests requests) throws Exception {
+        return requests.codec.expense(requests.format, requests.expense.asReadOnlyByteBuffer());
+    }
+
+    @Benchmark
+    public DatabasePayloadCodec.Payment decodePayment(Requests requests) throws Exception {
+        return requests.codec.payment(requests.format, requests.payment.asReadOnlyByteBuffer());
+    }
+}
@@ -0,0 +1,68 @@
+package pt.tecnico.sirs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pt.tecnico.sirs.cryptology.Security;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+// Whole envelopes: signed (protect/check/unprotect/open) against sealed (seal/unseal)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityBenchmark {
+    @Param({"100", "1024", "65536", "1048576", "10485760"})
+    public int size;
+
+    private SecretKey secretKey;
+    private byte[] iv;
+    private KeyPair keyPair;
+    private byte[] message;
+    private byte[] protectedMessage;
+    private byte[] sealedMessage;
+
+    @Setup
+    public void setup() throws Exception {
+        secretKey = Fixtures.sessionKey();
+        iv = Fixtures.iv();
+        keyPair = Fixtures.keyPair();
+        message = Fixtures.bytes(size);
+        protectedMessage = Security.protect(message, secretKey, keyPair.getPrivate(), iv);
+        sealedMessage = Security.seal(message, secretKey);
+    }
+
+    @Benchmark
+    public byte[] protect() throws Exception {
+        return Security.protect(message, secretKey, keyPair.getPrivate(), iv);
+    }
+
+    @Benchmark
+    public boolean check() throws Exception {
+        return Security.check(protectedMessage, secretKey, keyPair.getPublic(), iv);
+    }
+
+    @Benchmark
+    public byte[] unprotect() throws Exception {
+        return Security.unprotect(protectedMessage, secretKey, iv);
+    }
+
+    @Benchmark
+    public ByteBuffer open() throws Exception {
+        return Security.open(protectedMessage, secretKey, keyPair.getPublic(), iv);
+    }
+
+    @Benchmark
+    public byte[] seal() throws Exception {
+        return Security.seal(message, secretKey);
+    }
+
+    @Benchmark
+    public ByteBuffer unseal() throws Exception {
+        return Security.unseal(ByteBuffer.wrap(sealedMessage), secretKey);
+    }
+}
@@ -0,0 +1,63 @@
+package pt.tecnico.sirs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pt.tecnico.sirs.utils.Utils;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import java.util.concurrent.TimeUnit;
+
+// JSON and hex codecs every request goes through; the JSON document is a movement list of about the given size
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+    private static final int MOVEMENT_BYTES = 100;
+
+    @Param({"100", "1024", "65536", "1048576", "10485760"})
+    public int size;
+
+    private JsonObject json;
+    private byte[] jsonBytes;
+    private byte[] bytes;
+    private String hex;
+
+    @Setup
+    public void setup() {
+        JsonArrayBuilder movements = Json.createArrayBuilder();
+        for (int i = 0; i < Math.max(1, size / MOVEMENT_BYTES); i++)
+            movements.add(Json.createObjectBuilder()
+                    .add("currency", "EUR")
+                    .add("date", "2023-12-01T10:15:30")
+                    .add("value", "-" + (i % 1000) + ".50")
+                    .add("description", "Movement " + i));
+        json = Json.createObjectBuilder().add("movements", movements).build();
+        jsonBytes = Utils.serializeJson(json);
+        bytes = Fixtures.bytes(size);
+        hex = Utils.byteToHex(bytes);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() {
+        return Utils.serializeJson(json);
+    }
+
+    @Benchmark
+    public JsonObject deserializeJson() {
+        return Utils.deserializeJson(jsonBytes);
+    }
+
+    @Benchmark
+    public String byteToHex() {
+        return Utils.byteToHex(bytes);
+    }
+
+    @Benchmark
+    public byte[] hexToByte() {
+        return Utils.hexToByte(hex);
+    }
+}
@@ -0,0 +1,155 @@
+package pt.tecnico.sirs.benchmarks.harness;
+
+import io.grpc.*;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import pt.tecnico.sirs.authenticationserver.AuthenticationServerImpl;
+import pt.tecnico.sirs.authenticationserver.domain.AuthenticationServerState;
+import pt.tecnico.sirs.bankserver.BankServerImpl;
+import pt.tecnico.sirs.bankserver.domain.BankState;
+import pt.tecnico.sirs.databaseserver.DatabaseServerImpl;
+import pt.tecnico.sirs.databaseserver.grpc.DatabaseService;
+import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseEnvelopeInterceptor;
+import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseServerCryptographicManager;
+import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseSessionRegistry;
+import pt.tecnico.sirs.databaseserver.repository.DatabaseManager;
+import pt.tecnico.sirs.telemetry.MetricsInterceptor;
+import pt.tecnico.sirs.telemetry.TracingServerInterceptor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The authentication server, bank and database wired as their servers wire them, but all in this JVM and talking over
+// the in-process transport, or over loopback TLS to include the transport in the measurements. The database is the
+// one hibernate.cfg.xml points at, or the in-memory engine to leave persistence out of them
+final class Deployment implements AutoCloseable {
+    enum Transport {
+        INPROCESS, TLS;
+
+        static Transport of(String name) {
+            return name == null || name.isBlank() ? INPROCESS : valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    private static final String LOCALHOST = "localhost";
+    // Every module ships the same self-signed certificate, the harness uses the database's
+    private static final String CERTIFICATE = "../Database/resources/certificates/cert.pem";
+    private static final String CERTIFICATE_KEY = "../Database/resources/certificates/key.key";
+
+    private final Transport transport;
+    private final DatabaseManager database;
+    private final DatabaseSessionRegistry sessions;
+    private final ExecutorService databaseExecutor;
+    private final List<Server> servers = new ArrayList<>();
+    private final List<ManagedChannel> channels = new ArrayList<>();
+    private final ManagedChannel authenticationChannel;
+    private final ManagedChannel bankChannel;
+
+    Deployment(Transport transport, DatabaseManager.Engine engine, int poolSize, boolean rowLocks, int maxInFlight,
+               boolean serialBank) throws IOException {
+        this.transport = transport;
+
+        this.database = new DatabaseManager(
+                new DatabaseService("BlingBankPersistence", "Harness Database", LOCALHOST, 0, false), engine, poolSize, rowLocks
+        );
+        final DatabaseServerCryptographicManager cryptoCore = new DatabaseServerCryptographicManager(
+                "resources/crypto/publicKey", "resources/crypto/privateKey"
+        );
+        this.sessions = new DatabaseSessionRegistry();
+        final DatabaseEnvelopeInterceptor envelopes = new DatabaseEnvelopeInterceptor(cryptoCore, sessions);
+
+        // Sized as DatabaseServer sizes its crypto pool
+        final AtomicInteger databaseThreadIndex = new AtomicInteger();
+        this.databaseExecutor = Executors.newFixedThreadPool(Math.max(Runtime.getRuntime().availableProcessors(), poolSize), runnable -> {
+            Thread thread = new Thread(runnable, "harness-database-" + databaseThreadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final String databaseName = InProcessServerBuilder.generateName();
+        final Server databaseServer = start(databaseName, ServerInterceptors.intercept(
+                new DatabaseServerImpl<>(database, cryptoCore, sessions, false), envelopes, new MetricsInterceptor(), new TracingServerInterceptor()
+        ), databaseExecutor);
+
+        final BankState bank = new BankState.BankStateBuilder(
+                "BlingBank", "Harness Bank", LOCALHOST, 0, connect(databaseName, databaseServer, true), false
+        ).maxInFlight(maxInFlight).serialized(serialBank).build();
+        final String bankName = InProcessServerBuilder.generateName();
+        final Server bankServer = start(bankName, ServerInterceptors.intercept(
+                new BankServerImpl(bank, false), new MetricsInterceptor(), new TracingServerInterceptor()
+        ), null);
+
+        final AuthenticationServerState authentication = new AuthenticationServerState.AuthenticationServerStateBuilder(
+                "BlingBank", "Harness Authentication Server", LOCALHOST, 0, false
+        ).build();
+        final String authenticationName = InProcessServerBuilder.generateName();
+        final Server authenticationServer = start(authenticationName, ServerInterceptors.intercept(
+                new AuthenticationServerImpl(authentication, false), new MetricsInterceptor(), new TracingServerInterceptor()
+        ), null);
+
+        this.bankChannel = connect(bankName, bankServer, false);
+        this.authenticationChannel = connect(authenticationName, authenticationServer, false);
+    }
+
+    private Server start(String name, ServerServiceDefinition service, ExecutorService executor) throws IOException {
+        ServerBuilder<?> builder;
+        if (transport == Transport.TLS) {
+            builder = Grpc.newServerBuilderForPort(0, TlsServerCredentials.newBuilder()
+                    .keyManager(new File(CERTIFICATE), new File(CERTIFICATE_KEY))
+                    .build());
+        } else {
+            builder = InProcessServerBuilder.forName(name);
+        }
+        if (executor != null) builder.executor(executor);
+        Server server = builder.addService(service).build().start();
+        servers.add(server);
+        return server;
+    }
+
+    // The bank presents its certificate to the database, as BankService does
+    private ManagedChannel connect(String name, Server server, boolean mutual) throws IOException {
+        ManagedChannel channel;
+        if (transport == Transport.TLS) {
+            TlsChannelCredentials.Builder credentials = TlsChannelCredentials.newBuilder().trustManager(new File(CERTIFICATE));
+            if (mutual) credentials.keyManager(new File(CERTIFICATE), new File(CERTIFICATE_KEY));
+            channel = Grpc.newChannelBuilderForAddress(LOCALHOST, server.getPort(), credentials.build()).build();
+        } else {
+            channel = InProcessChannelBuilder.forName(name).build();
+        }
+        channels.add(channel);
+        return channel;
+    }
+
+    Transport getTransport() {
+        return transport;
+    }
+
+    DatabaseManager getDatabase() {
+        return database;
+    }
+
+    Channel getAuthenticationChannel() {
+        return authenticationChannel;
+    }
+
+    Channel getBankChannel() {
+        return bankChannel;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        for (ManagedChannel channel : channels)
+            channel.shutdownNow();
+        for (Server server : servers)
+            server.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+        sessions.close();
+        database.shutDown();
+        databaseExecutor.shutdown();
+    }
+}
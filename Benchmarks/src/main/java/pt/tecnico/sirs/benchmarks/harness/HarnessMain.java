@@ -0,0 +1,116 @@
+package pt.tecnico.sirs.benchmarks.harness;
+
+import pt.tecnico.sirs.bankserver.domain.BankState;
+import pt.tecnico.sirs.cryptology.Security;
+import pt.tecnico.sirs.databaseserver.repository.DatabaseManager;
+import pt.tecnico.sirs.databaseserver.repository.core.AccountLocks;
+import pt.tecnico.sirs.databaseserver.repository.core.HibernateUtil;
+import pt.tecnico.sirs.telemetry.Tracing;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// End to end throughput harness: boots the authentication server, bank and database in this JVM on keys generated for
+// the run, signs in a population of simulated users and drives them through the operation mix once per caller count,
+// writing one report per round.
+// Fails when the balances of all accounts do not add up to the same total before and after the run, and on disjoint
+// accounts when a transaction lost an update race or no two payments ever ran at the same time
+public class HarnessMain {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("BlingBank Harness");
+        final Deployment.Transport transport = Deployment.Transport.of(System.getenv("harness-transport"));
+        final int clients = System.getenv("harness-clients") == null ? 2000 : Integer.parseInt(System.getenv("harness-clients"));
+        final double jointShare = System.getenv("harness-joint-share") == null ? 0.25 : Double.parseDouble(System.getenv("harness-joint-share"));
+        final String callers = System.getenv("harness-callers") == null ? "32,64,128" : System.getenv("harness-callers");
+        final Workload workload = Workload.of(System.getenv("harness-workload"));
+        // Credit slots for the fan-in recipient, 0 to keep its single balance row
+        final int splitSlots = System.getenv("harness-split-slots") == null ? 0 : Integer.parseInt(System.getenv("harness-split-slots"));
+        final Duration warmup = Duration.ofSeconds(System.getenv("harness-warmup") == null ? 5 : Long.parseLong(System.getenv("harness-warmup")));
+        final Duration duration = Duration.ofSeconds(System.getenv("harness-duration") == null ? 30 : Long.parseLong(System.getenv("harness-duration")));
+        final Mix mix = Mix.parse(System.getenv("harness-mix") == null ? Mix.DEFAULT : System.getenv("harness-mix"));
+        final Security.Mode envelope = Security.Mode.of(System.getenv("harness-envelope") == null ? Security.Mode.SEALED.name() : System.getenv("harness-envelope"));
+        final long deadlineMillis = System.getenv("harness-deadline-ms") == null ? 10_000 : Long.parseLong(System.getenv("harness-deadline-ms"));
+        final Path results = Path.of(System.getenv("harness-results") == null ? "target/harness" : System.getenv("harness-results"));
+        final int poolSize = System.getenv("database-pool-size") == null
+                ? HibernateUtil.DEFAULT_POOL_SIZE
+                : Integer.parseInt(System.getenv("database-pool-size"));
+        final boolean rowLocks = Boolean.parseBoolean(System.getenv("database-row-locks"));
+        final DatabaseManager.Engine engine = DatabaseManager.Engine.of(System.getenv("database-engine"));
+        final int maxInFlight = System.getenv("max-in-flight") == null
+                ? BankState.DEFAULT_MAX_IN_FLIGHT
+                : Integer.parseInt(System.getenv("max-in-flight"));
+        // The bank as it was before it forwarded asynchronously, for before and after comparisons
+        final boolean serialBank = Boolean.parseBoolean(System.getenv("harness-serial-bank"));
+        Files.createDirectories(results);
+        ThrowawayKeys.provision();
+        Tracing.fromEnvironment("harness");
+
+        try (Deployment deployment = new Deployment(transport, engine, poolSize, rowLocks, maxInFlight, serialBank)) {
+            System.out.printf("Signing in %d clients%n", clients);
+            final Population population = Population.open(deployment, clients, jointShare, envelope, deadlineMillis, Math.max(1, Math.min(64, clients)));
+            final DatabaseManager database = deployment.getDatabase();
+            if (workload == Workload.FANIN && splitSlots > 0) {
+                System.out.printf("Splitting the fan-in recipient's balance over %d slots%n", splitSlots);
+                database.splitBalance(population.hot().recipient(), splitSlots);
+            }
+            final BigDecimal before = population.totalBalance();
+            final AccountLocks locks = database.getAccountLocks();
+            final long retriesBefore = database.getRetries();
+            final long contendedBefore = locks.getContended();
+
+            final List<Round.Result> rounds = new ArrayList<>();
+            for (int callerCount : callerCounts(callers)) {
+                final Round.Result result = new Round(population, workload, mix, callerCount, warmup, duration).run();
+                final String report = Report.of(result, transport, workload, splitSlots, mix, population);
+                System.out.println();
+                System.out.print(report);
+                Files.writeString(results.resolve("harness-callers-" + callerCount + ".txt"), report);
+                rounds.add(result);
+            }
+            final String scaling = Report.scaling(rounds, workload);
+            System.out.println();
+            System.out.print(scaling);
+            Files.writeString(results.resolve("harness-scaling.txt"), scaling);
+
+            final BigDecimal after = population.totalBalance();
+            System.out.printf("%nBalance conservation: %s before, %s after%n", before, after);
+            if (before.compareTo(after) != 0)
+                throw new IllegalStateException("Balances changed by " + after.subtract(before) + " under load");
+
+            if (workload == Workload.DISJOINT) {
+                final long retries = database.getRetries() - retriesBefore;
+                final long contended = locks.getContended() - contendedBefore;
+                System.out.printf("Disjoint accounts: %d retried transactions, %d lock waits from shared stripes, at most %d transfers holding their locks at once%n",
+                        retries, contended, locks.getMaxHeld());
+                // Only transfers that share an account can lose an update race to each other
+                if (retries != 0)
+                    throw new IllegalStateException(retries + " transactions on unrelated accounts lost an update race");
+                final int mostCallers = rounds.stream().mapToInt(Round.Result::callers).max().orElse(0);
+                if (mix.includes(Mix.Operation.ORDER_PAYMENT) && mostCallers > 1 && Runtime.getRuntime().availableProcessors() > 1 && locks.getMaxHeld() < 2)
+                    throw new IllegalStateException("Payments on unrelated accounts never ran at the same time");
+            }
+        } finally {
+            Tracing.tracer().close();
+        }
+    }
+
+    // A list of counts, or "cores" for one caller per core: 1, 2, 4, ... up to every available processor
+    private static List<Integer> callerCounts(String callers) {
+        final List<Integer> counts = new ArrayList<>();
+        if ("cores".equalsIgnoreCase(callers.trim())) {
+            final int cores = Runtime.getRuntime().availableProcessors();
+            for (int count = 1; count < cores; count <<= 1)
+                counts.add(count);
+            counts.add(cores);
+            return counts;
+        }
+        for (String count : callers.split(","))
+            if (!count.isBlank()) counts.add(Integer.parseInt(count.trim()));
+        return counts;
+    }
+}
@@ -0,0 +1,85 @@
+package pt.tecnico.sirs.benchmarks.harness;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+// Operations drawn by weight, e.g. balance=40,getMovements=20,addExpense=25,orderPayment=15
+final class Mix {
+    enum Operation {
+        BALANCE("balance"),
+        GET_MOVEMENTS("getMovements"),
+        ADD_EXPENSE("addExpense"),
+        ORDER_PAYMENT("orderPayment");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        String label() {
+            return label;
+        }
+
+        static Operation of(String label) {
+            for (Operation operation : values())
+                if (operation.label.equalsIgnoreCase(label)) return operation;
+            throw new IllegalArgumentException("Unknown operation '" + label + "'");
+        }
+    }
+
+    static final String DEFAULT = "balance=40,getMovements=20,addExpense=25,orderPayment=15";
+
+    private final Map<Operation, Integer> weights;
+    private final Operation[] operations;
+    private final int[] cumulative;
+    private final int total;
+
+    private Mix(Map<Operation, Integer> weights) {
+        this.weights = weights;
+        this.operations = weights.keySet().toArray(new Operation[0]);
+        this.cumulative = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += weights.get(operations[i]);
+            cumulative[i] = sum;
+        }
+        this.total = sum;
+    }
+
+    static Mix parse(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            if (entry.isBlank()) continue;
+            String[] pair = entry.split("=");
+            if (pair.length != 2) throw new IllegalArgumentException("Bad mix entry '" + entry + "', expected operation=weight");
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) throw new IllegalArgumentException("Negative weight for '" + pair[0].trim() + "'");
+            if (weight > 0) weights.merge(Operation.of(pair[0].trim()), weight, Integer::sum);
+        }
+        if (weights.isEmpty()) throw new IllegalArgumentException("Mix '" + mix + "' has no operation");
+        return new Mix(weights);
+    }
+
+    boolean includes(Operation operation) {
+        return weights.containsKey(operation);
+    }
+
+    Operation next(Random random) {
+        int draw = random.nextInt(total);
+        for (int i = 0; i < cumulative.length; i++)
+            if (draw < cumulative[i]) return operations[i];
+        return operations[operations.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        weights.forEach((operation, weight) -> {
+            if (out.length() > 0) out.append(',');
+            out.append(operation.label()).append('=').append(weight);
+        });
+        return out.toString();
+    }
+}
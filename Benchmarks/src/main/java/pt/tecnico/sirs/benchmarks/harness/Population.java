@@ -0,0 +1,128 @@
+package pt.tecnico.sirs.benchmarks.harness;
+
+import pt.tecnico.sirs.cryptology.Operations;
+import pt.tecnico.sirs.cryptology.Security;
+import pt.tecnico.sirs.databaseserver.repository.DatabaseManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// The accounts of a run and a signed in client for each of their holders. Accounts are opened straight on the
+// database, as account opening is not part of the measured mix; a share of them are joint, with two holders
+final class Population {
+    record Account(List<SimulatedClient> holders) {
+        SimulatedClient holder(Random random) {
+            return holders.get(random.nextInt(holders.size()));
+        }
+
+        String recipient() {
+            return holders.get(0).getUsername();
+        }
+    }
+
+    static final BigDecimal INITIAL_DEPOSIT = new BigDecimal("1000000.00");
+    private static final String PASSWORD = "harness";
+
+    private final DatabaseManager database;
+    private final byte[] password;
+    private final List<Account> accounts;
+    private final int clients;
+
+    private Population(DatabaseManager database, byte[] password, List<Account> accounts, int clients) {
+        this.database = database;
+        this.password = password;
+        this.accounts = accounts;
+        this.clients = clients;
+    }
+
+    // Holder names carry the run id so repeated runs against the same database never collide
+    static Population open(Deployment deployment, int clients, double jointShare, Security.Mode envelopeMode,
+                           long deadlineMillis, int parallelism) throws Exception {
+        final DatabaseManager database = deployment.getDatabase();
+        final byte[] password = Operations.hash(PASSWORD.getBytes());
+        final SimulatedClient.Keys keys = SimulatedClient.Keys.load();
+        final String run = Long.toString(System.currentTimeMillis(), 36);
+
+        List<List<String>> holders = new ArrayList<>();
+        int remaining = clients;
+        int joint = 0;
+        for (int index = 0; remaining > 0; index++) {
+            List<String> names = new ArrayList<>();
+            names.add("h" + run + "-" + index + "a");
+            if (remaining > 1 && joint < Math.round((index + 1) * jointShare)) {
+                names.add("h" + run + "-" + index + "b");
+                joint++;
+            }
+            holders.add(names);
+            remaining -= names.size();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<Account>> opened = new ArrayList<>();
+            for (List<String> names : holders) {
+                opened.add(pool.submit(() -> {
+                    database.createAccount(names, password, INITIAL_DEPOSIT, UniqueClock.next());
+                    List<SimulatedClient> signedIn = new ArrayList<>();
+                    for (String name : names) {
+                        SimulatedClient client = new SimulatedClient(name, PASSWORD, envelopeMode, keys, deadlineMillis,
+                                deployment.getAuthenticationChannel(), deployment.getBankChannel());
+                        client.authenticate();
+                        signedIn.add(client);
+                    }
+                    return new Account(List.copyOf(signedIn));
+                }));
+            }
+            List<Account> accounts = new ArrayList<>(opened.size());
+            for (Future<Account> account : opened)
+                accounts.add(account.get());
+            return new Population(database, password, List.copyOf(accounts), clients);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    Account account(int index) {
+        return accounts.get(index);
+    }
+
+    // The recipient of every payment in a fan-in workload
+    Account hot() {
+        return accounts.get(0);
+    }
+
+    Account random(Random random) {
+        return accounts.get(random.nextInt(accounts.size()));
+    }
+
+    Account other(Account account, Random random) {
+        Account other;
+        do other = random(random); while (other == account && accounts.size() > 1);
+        return other;
+    }
+
+    int getClients() {
+        return clients;
+    }
+
+    int getAccounts() {
+        return accounts.size();
+    }
+
+    long getJointAccounts() {
+        return accounts.stream().filter(account -> account.holders().size() > 1).count();
+    }
+
+    // Payments move money between accounts and expenses only record movements, so this never changes under load
+    BigDecimal totalBalance() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Account account : accounts)
+            total = total.add(database.balance(account.recipient(), password, UniqueClock.next()));
+        return total;
+    }
+}
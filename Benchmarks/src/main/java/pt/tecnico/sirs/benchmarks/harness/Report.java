@@ -0,0 +1,87 @@
+package pt.tecnico.sirs.benchmarks.harness;
+
+import org.HdrHistogram.Histogram;
+import pt.tecnico.sirs.benchmarks.harness.Mix.Operation;
+import pt.tecnico.sirs.telemetry.Stage;
+
+import java.util.List;
+import java.util.Map;
+
+// Plain text summary of a round: throughput and latency percentiles per client operation, then per RPC of each tier
+// with the stages it spent its time in
+final class Report {
+    private static final String ROW = "%-36s %10d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n";
+    private static final String HEADER = "%-36s %10s %10s %9s %9s %9s %9s %9s%n";
+
+    private Report() {}
+
+    static String of(Round.Result result, Deployment.Transport transport, Workload workload, int splitSlots, Mix mix, Population population) {
+        final double seconds = result.elapsedNanos() / 1e9;
+        final StringBuilder out = new StringBuilder(4096);
+        out.append(String.format("Round: %d callers over %d clients (%d accounts, %d joint), %s transport, %s workload%s, mix %s, %.1f s measured%n",
+                result.callers(), population.getClients(), population.getAccounts(), population.getJointAccounts(),
+                transport.name().toLowerCase(), workload.name().toLowerCase(),
+                workload == Workload.FANIN ? (splitSlots > 0 ? " into " + splitSlots + " slots" : " into one balance") : "",
+                mix, seconds));
+
+        out.append(String.format("%nClient operations, latency in ms%n"));
+        out.append(String.format(HEADER, "operation", "count", "ops/s", "p50", "p90", "p99", "p99.9", "max"));
+        Histogram all = null;
+        for (Map.Entry<Operation, Histogram> entry : result.latencies().entrySet()) {
+            Histogram histogram = entry.getValue();
+            if (histogram.getTotalCount() == 0) continue;
+            row(out, entry.getKey().label(), histogram, seconds);
+            if (all == null) all = histogram.copy();
+            else all.add(histogram);
+        }
+        if (all != null) row(out, "all", all, seconds);
+
+        if (!result.errors().isEmpty()) {
+            out.append(String.format("%nErrors%n"));
+            result.errors().forEach((error, count) -> out.append(String.format("%-36s %10d%n", error, count)));
+        }
+
+        out.append(String.format("%nServer tiers, latency in ms%n"));
+        out.append(String.format(HEADER, "tier/method", "count", "ops/s", "p50", "p90", "p99", "p99.9", "max"));
+        result.rpcLatencies().forEach((rpc, histogram) -> {
+            if (histogram.getTotalCount() == 0) return;
+            row(out, tier(rpc), histogram, seconds);
+            for (Map.Entry<Stage, Histogram> stage : result.stageLatencies().getOrDefault(rpc, Map.of()).entrySet())
+                if (stage.getValue().getTotalCount() > 0) row(out, "  " + stage.getKey().label(), stage.getValue(), seconds);
+        });
+        return out.toString();
+    }
+
+    // Throughput of every round against the first; with one caller per core this is the core scaling curve
+    static String scaling(List<Round.Result> results, Workload workload) {
+        final StringBuilder out = new StringBuilder(512);
+        out.append(String.format("Scaling, %s workload%n", workload.name().toLowerCase()));
+        out.append(String.format("%10s %12s %12s %9s%n", "callers", "ops/s", "ops/s each", "speedup"));
+        double first = 0;
+        for (Round.Result result : results) {
+            double throughput = result.operations() / (result.elapsedNanos() / 1e9);
+            if (first == 0) first = throughput;
+            out.append(String.format("%10d %12.1f %12.1f %9.2f%n", result.callers(), throughput,
+                    throughput / result.callers(), first == 0 ? 0 : throughput / first));
+        }
+        return out.toString();
+    }
+
+    // pt.tecnico.sirs.contract.bankserver.BankingService/Balance becomes BankingService/Balance
+    private static String tier(String rpc) {
+        int slash = rpc.indexOf('/');
+        int dot = rpc.lastIndexOf('.', slash < 0 ? rpc.length() : slash);
+        return rpc.substring(dot + 1);
+    }
+
+    private static void row(StringBuilder out, String name, Histogram histogram, double seconds) {
+        out.append(String.format(ROW, name, histogram.getTotalCount(), histogram.getTotalCount() / seconds,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue())));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,167 @@
+package pt.tecnico.sirs.benchmarks.harness;
+
+import io.grpc.StatusRuntimeException;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import pt.tecnico.sirs.benchmarks.harness.Mix.Operation;
+import pt.tecnico.sirs.telemetry.Metrics;
+import pt.tecnico.sirs.telemetry.Stage;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// A fixed number of callers, each issuing the next operation of the mix as soon as its previous one returns, for a
+// warmup and then a measured interval. Client side latency is per operation, a joint payment counting both holders'
+// orders; server side latency is read from the Metrics registry every tier in this JVM records to
+final class Round {
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    // Payments match on their description, so it stays unique across every round of a run
+    private static final AtomicLong descriptions = new AtomicLong();
+
+    record Result(int callers, long elapsedNanos, Map<Operation, Histogram> latencies, Map<String, Long> errors,
+                  Map<String, Histogram> rpcLatencies, Map<String, Map<Stage, Histogram>> stageLatencies) {
+        long operations() {
+            return latencies.values().stream().mapToLong(Histogram::getTotalCount).sum();
+        }
+    }
+
+    private final Population population;
+    private final Workload workload;
+    private final Mix mix;
+    private final int callers;
+    private final Duration warmup;
+    private final Duration duration;
+
+    Round(Population population, Workload workload, Mix mix, int callers, Duration warmup, Duration duration) {
+        if (workload == Workload.DISJOINT && population.getAccounts() < 2 * callers)
+            throw new IllegalArgumentException("A disjoint round of " + callers + " callers needs " + 2 * callers
+                    + " accounts, the population has " + population.getAccounts());
+        this.population = population;
+        this.workload = workload;
+        this.mix = mix;
+        this.callers = callers;
+        this.warmup = warmup;
+        this.duration = duration;
+    }
+
+    Result run() throws InterruptedException {
+        final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values())
+            recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS));
+        final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+        final CountDownLatch done = new CountDownLatch(callers);
+        final long measureFrom = System.nanoTime() + warmup.toNanos();
+        final long stopAt = measureFrom + duration.toNanos();
+
+        for (int i = 0; i < callers; i++) {
+            final long seed = ThreadLocalRandom.current().nextLong();
+            final int index = i;
+            Thread caller = new Thread(() -> {
+                try {
+                    call(index, new Random(seed), recorders, errors, measureFrom, stopAt);
+                } finally {
+                    done.countDown();
+                }
+            }, "harness-caller-" + i);
+            caller.setDaemon(true);
+            caller.start();
+        }
+
+        // Calls started during warmup are not recorded by the callers, nor by the servers once these snapshots are taken
+        TimeUnit.NANOSECONDS.sleep(Math.max(0, measureFrom - System.nanoTime()));
+        final Map<String, Histogram> rpcBefore = Metrics.registry().getRpcLatencies();
+        final Map<String, Map<Stage, Histogram>> stagesBefore = new TreeMap<>();
+        rpcBefore.keySet().forEach(rpc -> stagesBefore.put(rpc, Metrics.registry().getStageLatencies(rpc)));
+        final long start = System.nanoTime();
+
+        done.await();
+        final long elapsed = System.nanoTime() - start;
+
+        final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        recorders.forEach((operation, recorder) -> latencies.put(operation, recorder.getIntervalHistogram()));
+        final Map<String, Long> errorCounts = new TreeMap<>();
+        errors.forEach((key, count) -> errorCounts.put(key, count.sum()));
+        final Map<String, Histogram> rpcLatencies = new TreeMap<>();
+        final Map<String, Map<Stage, Histogram>> stageLatencies = new TreeMap<>();
+        Metrics.registry().getRpcLatencies().forEach((rpc, after) -> {
+            rpcLatencies.put(rpc, since(after, rpcBefore.get(rpc)));
+            Map<Stage, Histogram> stages = new EnumMap<>(Stage.class);
+            Map<Stage, Histogram> before = stagesBefore.getOrDefault(rpc, Map.of());
+            Metrics.registry().getStageLatencies(rpc).forEach((stage, histogram) -> stages.put(stage, since(histogram, before.get(stage))));
+            stageLatencies.put(rpc, stages);
+        });
+        return new Result(callers, elapsed, latencies, errorCounts, rpcLatencies, stageLatencies);
+    }
+
+    private static Histogram since(Histogram after, Histogram before) {
+        Histogram interval = after.copy();
+        if (before != null) interval.subtract(before);
+        return interval;
+    }
+
+    private void call(int caller, Random random, Map<Operation, Recorder> recorders, Map<String, LongAdder> errors, long measureFrom, long stopAt) {
+        while (System.nanoTime() < stopAt) {
+            final Operation operation = mix.next(random);
+            final long start = System.nanoTime();
+            try {
+                execute(caller, operation, random);
+                if (start >= measureFrom) recorders.get(operation).recordValue(Math.min(System.nanoTime() - start, HIGHEST_TRACKABLE_NANOS));
+            } catch (StatusRuntimeException e) {
+                if (start >= measureFrom) errors.computeIfAbsent(operation.label() + " " + e.getStatus().getCode(), ignored -> new LongAdder()).increment();
+            } catch (Exception e) {
+                if (start >= measureFrom) errors.computeIfAbsent(operation.label() + " " + e.getClass().getSimpleName(), ignored -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    private void execute(int caller, Operation operation, Random random) throws Exception {
+        final Population.Account account;
+        final Population.Account recipient;
+        if (workload == Workload.DISJOINT) {
+            // Caller i only ever pays between accounts 2i and 2i + 1
+            final int payer = random.nextInt(2);
+            account = population.account(2 * caller + payer);
+            recipient = population.account(2 * caller + 1 - payer);
+        } else if (workload == Workload.FANIN) {
+            account = population.random(random);
+            recipient = account == population.hot() ? population.other(account, random) : population.hot();
+        } else {
+            account = population.random(random);
+            recipient = population.other(account, random);
+        }
+        switch (operation) {
+            case BALANCE -> account.holder(random).balance();
+            case GET_MOVEMENTS -> account.holder(random).getMovements();
+            case ADD_EXPENSE -> account.holder(random).addExpense(LocalDateTime.now(), amount(random), description());
+            case ORDER_PAYMENT -> {
+                // Moves money once every holder ordered the same payment, so each holder of a joint account orders it
+                final LocalDateTime date = LocalDateTime.now();
+                final BigDecimal amount = amount(random);
+                final String description = description();
+                for (SimulatedClient holder : account.holders())
+                    holder.orderPayment(date, amount, description, recipient.recipient());
+            }
+        }
+    }
+
+    // Small enough that no account runs dry over a run
+    private static BigDecimal amount(Random random) {
+        return BigDecimal.valueOf(1 + random.nextInt(9_999), 2);
+    }
+
+    private static String description() {
+        return "harness " + descriptions.incrementAndGet();
+    }
+}
@@ -0,0 +1,198 @@
+package pt.tecnico.sirs.benchmarks.harness;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Channel;
+import pt.tecnico.sirs.contract.authenticationserver.AuthenticationServer;
+import pt.tecnico.sirs.contract.authenticationserver.AuthenticationServerServiceGrpc;
+import pt.tecnico.sirs.contract.authenticationserver.AuthenticationServerServiceGrpc.AuthenticationServerServiceBlockingStub;
+import pt.tecnico.sirs.contract.bankserver.BankServer;
+import pt.tecnico.sirs.contract.bankserver.BankServer.*;
+import pt.tecnico.sirs.contract.bankserver.BankingServiceGrpc;
+import pt.tecnico.sirs.contract.bankserver.BankingServiceGrpc.BankingServiceBlockingStub;
+import pt.tecnico.sirs.contract.payloads.PayloadCodec;
+import pt.tecnico.sirs.contract.payloads.Payloads.*;
+import pt.tecnico.sirs.cryptology.Base;
+import pt.tecnico.sirs.cryptology.Operations;
+import pt.tecnico.sirs.cryptology.Security;
+import pt.tecnico.sirs.utils.Utils;
+import pt.tecnico.sirs.utils.exceptions.TamperedMessageException;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.json.Json;
+import javax.json.JsonObject;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// One user of the bank speaking the same protocol as UserService, typed payloads only, but keeping the session it
+// negotiates in memory instead of the session key files UserService shares, so thousands of them can run side by side
+// and failures surface to the caller instead of being logged
+final class SimulatedClient {
+
+    // Key material every client is provisioned with, read once
+    record Keys(SecretKey clientKey, byte[] clientIv, PrivateKey privateKey, PublicKey publicKey) {
+        static Keys load() throws Exception {
+            return new Keys(
+                    Base.readSecretKey("resources/crypto/client/symmetricKey"),
+                    Base.readIv("resources/crypto/client/iv"),
+                    Base.readPrivateKey("resources/crypto/privateKey"),
+                    Base.readPublicKey("resources/crypto/publicKey")
+            );
+        }
+    }
+
+    private final String username;
+    private final ByteString password;
+    private final Security.Mode envelopeMode;
+    private final Keys keys;
+    private final long deadlineMillis;
+    private final AuthenticationServerServiceBlockingStub authenticationStub;
+    private final BankingServiceBlockingStub bankStub;
+    private volatile SecretKey sessionKey;
+    private volatile byte[] sessionIv;
+    private volatile ByteString session = ByteString.EMPTY;
+
+    SimulatedClient(String username, String password, Security.Mode envelopeMode, Keys keys, long deadlineMillis,
+                    Channel authenticationChannel, Channel bankChannel) throws Exception {
+        this.username = username;
+        this.password = ByteString.copyFrom(Operations.hash(password.getBytes()));
+        this.envelopeMode = envelopeMode;
+        this.keys = keys;
+        this.deadlineMillis = deadlineMillis;
+        this.authenticationStub = AuthenticationServerServiceGrpc.newBlockingStub(authenticationChannel);
+        this.bankStub = BankingServiceGrpc.newBlockingStub(bankChannel);
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    void authenticate() throws Exception {
+        final String timestampString = UniqueClock.next().toString();
+
+        // Needham-Schroeder step 1
+        AuthenticationServer.AuthenticateResponse ticketResponse = authentication().authenticate(
+                AuthenticationServer.AuthenticateRequest.newBuilder().setRequest(ByteString.copyFrom(
+                        Utils.serializeJson(Utils.createJson(
+                                List.of("source", "target", "timestampString"),
+                                List.of("user", "database", timestampString)
+                )))).build());
+
+        // Needham-Schroeder step 2
+        JsonObject ticketJson = Utils.deserializeJson(
+                Operations.decryptData(keys.clientKey(), ticketResponse.getResponse().toByteArray(), keys.clientIv())
+        );
+        if (!ticketJson.getString("target").equals("database") || !ticketJson.getString("timestampString").equals(timestampString))
+            throw new TamperedMessageException();
+        final SecretKey key = new SecretKeySpec(Utils.hexToByte(ticketJson.getString("sessionKey")), "AES");
+        final byte[] iv = Utils.hexToByte(ticketJson.getString("sessionIv"));
+
+        // Needham-Schroeder step 3
+        BankServer.AuthenticateResponse authenticateResponse = bank().authenticate(
+                BankServer.AuthenticateRequest.newBuilder().setRequest(ByteString.copyFrom(
+                        Utils.serializeJson(Json.createObjectBuilder()
+                                .add("ticket", ticketJson.getJsonString("targetTicket"))
+                                .add("timestampString", timestampString)
+                                .add("envelope", envelopeMode.name())
+                                .add("payload", PayloadCodec.Format.PROTOBUF.name())
+                                .build()
+                ))).build());
+
+        // Needham-Schroeder step 4
+        JsonObject challengeJson = Utils.deserializeJson(
+                Operations.decryptData(key, authenticateResponse.getResponse().toByteArray(), iv)
+        );
+        if (!envelopeMode.name().equals(challengeJson.getString("envelope", Security.Mode.SIGNED.name()))
+                || !PayloadCodec.Format.PROTOBUF.name().equals(challengeJson.getString("payload", PayloadCodec.Format.JSON.name())))
+            throw new IllegalStateException("Database did not accept " + envelopeMode + " envelopes with typed payloads");
+        final UUID id = UUID.fromString(challengeJson.getString("session"));
+        final ByteString sessionId = ByteString.copyFrom(
+                ByteBuffer.allocate(Long.BYTES * 2)
+                        .putLong(id.getMostSignificantBits())
+                        .putLong(id.getLeastSignificantBits())
+                        .flip()
+        );
+
+        // Needham-Schroeder step 5
+        StillAliveResponse ignored = bank().stillAlive(StillAliveRequest.newBuilder().setRequest(
+                sessionId.concat(ByteString.copyFrom(Operations.encryptData(
+                        key,
+                        Utils.serializeJson(Json.createObjectBuilder().add("nonce", challengeJson.getInt("nonce") - 1).build()),
+                        iv
+                )))).build());
+
+        this.sessionKey = key;
+        this.sessionIv = iv;
+        this.session = sessionId;
+    }
+
+    BigDecimal balance() throws Exception {
+        BalanceResponse response = bank().balance(BalanceRequest.newBuilder()
+                .setRequest(protect(credentials().toByteString(), envelopeMode))
+                .build());
+        return PayloadCodec.amount(BalancePayload.parseFrom(open(response.getResponse(), envelopeMode)).getBalance());
+    }
+
+    int getMovements() throws Exception {
+        GetMovementsResponse response = bank().getMovements(GetMovementsRequest.newBuilder()
+                .setRequest(protect(credentials().toByteString(), envelopeMode))
+                .build());
+        return MovementsPayload.parseFrom(open(response.getResponse(), envelopeMode)).getMovementsCount();
+    }
+
+    void addExpense(LocalDateTime date, BigDecimal amount, String description) throws Exception {
+        AddExpenseResponse ignored = bank().addExpense(AddExpenseRequest.newBuilder()
+                .setRequest(protect(ExpensePayload.newBuilder()
+                        .setCredentials(credentials())
+                        .setDate(PayloadCodec.timestamp(date))
+                        .setAmount(PayloadCodec.amount(amount))
+                        .setDescription(description)
+                        .build().toByteString(), envelopeMode))
+                .build());
+    }
+
+    // Payment orders always travel signed, whatever the session negotiated
+    void orderPayment(LocalDateTime date, BigDecimal amount, String description, String recipient) throws Exception {
+        OrderPaymentResponse ignored = bank().orderPayment(OrderPaymentRequest.newBuilder()
+                .setRequest(protect(PaymentPayload.newBuilder()
+                        .setCredentials(credentials())
+                        .setDate(PayloadCodec.timestamp(date))
+                        .setAmount(PayloadCodec.amount(amount))
+                        .setDescription(description)
+                        .setRecipient(recipient)
+                        .build().toByteString(), Security.Mode.SIGNED))
+                .build());
+    }
+
+    private Credentials credentials() {
+        return Credentials.newBuilder()
+                .setUsername(username)
+                .setPassword(password)
+                .setTimestamp(PayloadCodec.timestamp(UniqueClock.next()))
+                .build();
+    }
+
+    private ByteString protect(ByteString payload, Security.Mode mode) throws Exception {
+        return session.concat(ByteString.copyFrom(
+                Security.protect(payload.toByteArray(), mode, sessionKey, keys.privateKey(), sessionIv)
+        ));
+    }
+
+    private ByteBuffer open(ByteString response, Security.Mode mode) throws Exception {
+        return Security.open(response.asReadOnlyByteBuffer(), mode, sessionKey, keys.publicKey(), sessionIv);
+    }
+
+    private AuthenticationServerServiceBlockingStub authentication() {
+        return authenticationStub.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private BankingServiceBlockingStub bank() {
+        return bankStub.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS);
+    }
+}
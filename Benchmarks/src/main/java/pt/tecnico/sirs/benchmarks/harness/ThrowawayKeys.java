@@ -0,0 +1,43 @@
+package pt.tecnico.sirs.benchmarks.harness;
+
+import pt.tecnico.sirs.cryptology.Base;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+// Fresh key material for one harness run, written where the embedded servers read theirs from: AES-256 keys, 16 byte
+// IVs and one RSA-2048 pair shared by clients and servers, as the module resources share theirs
+final class ThrowawayKeys {
+    private static final String CRYPTO = "resources/crypto";
+
+    private ThrowawayKeys() {}
+
+    static void provision() throws IOException, NoSuchAlgorithmException {
+        SecureRandom random = new SecureRandom();
+        Files.createDirectories(Path.of(CRYPTO, "client"));
+        Files.createDirectories(Path.of(CRYPTO, "database"));
+
+        Base.writeKeyMaterial(CRYPTO + "/client/symmetricKey", bytes(random, 32));
+        Base.writeKeyMaterial(CRYPTO + "/client/iv", bytes(random, 16));
+        Base.writeKeyMaterial(CRYPTO + "/database/symmetricKey", bytes(random, 32));
+        Base.writeKeyMaterial(CRYPTO + "/database/iv", bytes(random, 16));
+        Base.writeKeyMaterial(CRYPTO + "/database/indexKey", bytes(random, 32));
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048, random);
+        KeyPair keyPair = generator.generateKeyPair();
+        Base.writeKeyMaterial(CRYPTO + "/privateKey", keyPair.getPrivate().getEncoded());
+        Base.writeKeyMaterial(CRYPTO + "/publicKey", keyPair.getPublic().getEncoded());
+    }
+
+    private static byte[] bytes(SecureRandom random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
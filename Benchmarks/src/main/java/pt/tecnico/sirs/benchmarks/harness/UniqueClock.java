@@ -0,0 +1,21 @@
+package pt.tecnico.sirs.benchmarks.harness;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Strictly increasing request timestamps shared by every simulated client, so the servers' replay windows never take
+// two concurrent requests for a replay of one another
+final class UniqueClock {
+    private static final AtomicLong last = new AtomicLong();
+
+    private UniqueClock() {}
+
+    static OffsetDateTime next() {
+        Instant now = Instant.now();
+        long nanos = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        long unique = last.accumulateAndGet(nanos, (previous, current) -> Math.max(previous + 1, current));
+        return OffsetDateTime.ofInstant(Instant.ofEpochSecond(0, unique), ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,11 @@
+package pt.tecnico.sirs.benchmarks.harness;
+
+// Which accounts a caller works on: any account paying any other, each caller only between its own two accounts, so
+// no two callers ever touch the same account, or every account paying the first one, a single high fan-in recipient
+enum Workload {
+    UNIFORM, DISJOINT, FANIN;
+
+    static Workload of(String name) {
+        return name == null || name.isBlank() ? UNIFORM : valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,85 @@
+package pt.tecnico.sirs.contract.payloads;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Timestamp;
+import pt.tecnico.sirs.contract.payloads.Payloads.Amount;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+// Conversions between the typed payloads and the values both ends work with; local dates travel as UTC instants
+public final class PayloadCodec {
+
+    // JSON payloads are the v1 contract, PROTOBUF the typed v2 one; both are served while clients migrate
+    public enum Format {
+        JSON,
+        PROTOBUF;
+
+        public static Format of(String name) {
+            for (Format format : values())
+                if (format.name().equals(name)) return format;
+            return JSON;
+        }
+    }
+
+    private PayloadCodec() {}
+
+    public static Amount amount(BigDecimal value) {
+        return Amount.newBuilder()
+                .setUnscaled(ByteString.copyFrom(value.unscaledValue().toByteArray()))
+                .setScale(value.scale())
+                .build();
+    }
+
+    public static BigDecimal amount(Amount amount) {
+        if (amount.getUnscaled().isEmpty()) return BigDecimal.ZERO.setScale(amount.getScale());
+        return new BigDecimal(new BigInteger(amount.getUnscaled().toByteArray()), amount.getScale());
+    }
+
+    public static Timestamp timestamp(Instant instant) {
+        return Timestamp.newBuilder()
+                .setSeconds(instant.getEpochSecond())
+                .setNanos(instant.getNano())
+                .build();
+    }
+
+    public static Timestamp timestamp(OffsetDateTime dateTime) {
+        return timestamp(dateTime.toInstant());
+    }
+
+    public static Timestamp timestamp(LocalDateTime dateTime) {
+        return timestamp(dateTime.toInstant(ZoneOffset.UTC));
+    }
+
+    public static Instant instant(Timestamp timestamp) {
+        return Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos());
+    }
+
+    public static OffsetDateTime offsetDateTime(Timestamp timestamp) {
+        return OffsetDateTime.ofInstant(instant(timestamp), ZoneOffset.UTC);
+    }
+
+    public static LocalDateTime localDateTime(Timestamp timestamp) {
+        return LocalDateTime.ofInstant(instant(timestamp), ZoneOffset.UTC);
+    }
+
+    public static ByteString uuid(UUID uuid) {
+        return ByteString.copyFrom(
+                ByteBuffer.allocate(Long.BYTES * 2)
+                        .putLong(uuid.getMostSignificantBits())
+                        .putLong(uuid.getLeastSignificantBits())
+                        .flip()
+        );
+    }
+
+    public static UUID uuid(ByteString bytes) {
+        ByteBuffer buffer = bytes.asReadOnlyByteBuffer();
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -5,6 +5,10 @@ import pt.tecnico.sirs.utils.Utils;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import javax.json.JsonObject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.KeyFactory;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -52,6 +56,22 @@ public final class Base {
         default void addPrivateKeyPath(Integer user, String publicKeyPath) {
             privateKeyPaths.put(user, publicKeyPath);
         }
+
+        default byte[] getIv(Integer user) throws Exception {
+            return Base.readIv(getIvPath(user));
+        }
+
+        default SecretKey getSecretKey(Integer user) throws Exception {
+            return Base.readSecretKey(getSecretKeyPath(user));
+        }
+
+        default PublicKey getPublicKey(Integer user) throws Exception {
+            return Base.readPublicKey(getPublicKeyPath(user));
+        }
+
+        default PrivateKey getPrivateKey(Integer user) throws Exception {
+            return Base.readPrivateKey(getPrivateKeyPath(user));
+        }
     }
 
     public interface CryptographicCore {
@@ -60,6 +80,11 @@ public final class Base {
             return Security.check(input, Base.readSecretKey(secretKeyPath), Base.readPublicKey(publicKeyPath), Base.readIv(ivPath));
         }
 
+        default ByteBuffer open(ByteBuffer input, String secretKeyPath, String publicKeyPath, String ivPath)
+                throws Exception {
+            return Security.open(input, Base.readSecretKey(secretKeyPath), Base.readPublicKey(publicKeyPath), Base.readIv(ivPath));
+        }
+
         default JsonObject decrypt(byte[] input, String secretKeyPath, String ivPath)
                 throws Exception {
             return Utils.deserializeJson(Security.unprotect(input, Base.readSecretKey(secretKeyPath), Base.readIv(ivPath)));
@@ -80,6 +105,16 @@ public final class Base {
                     throws Exception {
                 return Utils.deserializeJson(Security.unprotect(input, secretKey, iv));
             }
+
+            public static ByteBuffer open(ByteBuffer input, SecretKey secretKey, PublicKey publicKey, byte[] iv)
+                    throws Exception {
+                return Security.open(input, secretKey, publicKey, iv);
+            }
+
+            public static ByteBuffer open(ByteBuffer input, Security.Mode mode, SecretKey secretKey, PublicKey publicKey, byte[] iv)
+                    throws Exception {
+                return Security.open(input, mode, secretKey, publicKey, iv);
+            }
         }
 
         final class Encrypter {
@@ -87,24 +122,34 @@ public final class Base {
                     throws Exception {
                 return Security.protect(input, secretKey, privateKey, iv);
             }
+
+            public static byte[] encrypt(byte[] input, Security.Mode mode, SecretKey secretKey, PrivateKey privateKey, byte[] iv)
+                    throws Exception {
+                return Security.protect(input, mode, secretKey, privateKey, iv);
+            }
         }
     }
 
     public static SecretKey readSecretKey(String secretKeyPath) throws Exception {
-        return new SecretKeySpec(Utils.readBytesFromFile(secretKeyPath), "AES");
+        return KeyCache.getInstance().resolve(secretKeyPath, "secret", encoded -> new SecretKeySpec(encoded, "AES"));
     }
 
     public static PublicKey readPublicKey(String publicKeyPath) throws Exception {
-        X509EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(Utils.readBytesFromFile(publicKeyPath));
-        return KeyFactory.getInstance("RSA").generatePublic(publicKeySpec);
+        return KeyCache.getInstance().resolve(publicKeyPath, "public",
+                encoded -> KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(encoded)));
     }
 
     public static PrivateKey readPrivateKey(String privateKeyPath) throws Exception {
-        PKCS8EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(Utils.readBytesFromFile(privateKeyPath));
-        return KeyFactory.getInstance("RSA").generatePrivate(privateKeySpec);
+        return KeyCache.getInstance().resolve(privateKeyPath, "private",
+                encoded -> KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(encoded)));
     }
 
     public static byte[] readIv(String ivPath) throws Exception {
-        return Utils.readBytesFromFile(ivPath);
+        return KeyCache.getInstance().resolve(ivPath, "iv", encoded -> encoded).clone();
+    }
+
+    public static void writeKeyMaterial(String path, byte[] material) throws IOException {
+        Files.write(Paths.get(path), material);
+        KeyCache.getInstance().invalidate(path);
     }
 }
@@ -0,0 +1,72 @@
+package pt.tecnico.sirs.cryptology;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+
+// One engine of each algorithm per thread; callers must re-init (or reset) it before every message
+final class Engines {
+    static final String CIPHER = "AES/CBC/PKCS5Padding";
+    static final String AUTHENTICATED_CIPHER = "AES/GCM/NoPadding";
+    static final String DIGEST = "SHA-256";
+    static final String SIGNATURE = "SHA256withRSA";
+    static final String MAC = "HmacSHA256";
+
+    private static final ThreadLocal<Cipher> cipher = new ThreadLocal<>();
+    private static final ThreadLocal<Cipher> authenticatedCipher = new ThreadLocal<>();
+    private static final ThreadLocal<MessageDigest> digest = new ThreadLocal<>();
+    private static final ThreadLocal<Signature> signature = new ThreadLocal<>();
+    private static final ThreadLocal<Mac> mac = new ThreadLocal<>();
+
+    private Engines() {}
+
+    static Cipher cipher() throws NoSuchPaddingException, NoSuchAlgorithmException {
+        Cipher engine = cipher.get();
+        if (engine == null) {
+            engine = Cipher.getInstance(CIPHER);
+            cipher.set(engine);
+        }
+        return engine;
+    }
+
+    static Cipher authenticatedCipher() throws NoSuchPaddingException, NoSuchAlgorithmException {
+        Cipher engine = authenticatedCipher.get();
+        if (engine == null) {
+            engine = Cipher.getInstance(AUTHENTICATED_CIPHER);
+            authenticatedCipher.set(engine);
+        }
+        return engine;
+    }
+
+    static MessageDigest digest() throws NoSuchAlgorithmException {
+        MessageDigest engine = digest.get();
+        if (engine == null) {
+            engine = MessageDigest.getInstance(DIGEST);
+            digest.set(engine);
+        }
+        engine.reset();
+        return engine;
+    }
+
+    static Signature signature() throws NoSuchAlgorithmException {
+        Signature engine = signature.get();
+        if (engine == null) {
+            engine = Signature.getInstance(SIGNATURE);
+            signature.set(engine);
+        }
+        return engine;
+    }
+
+    static Mac mac() throws NoSuchAlgorithmException {
+        Mac engine = mac.get();
+        if (engine == null) {
+            engine = Mac.getInstance(MAC);
+            mac.set(engine);
+        }
+        return engine;
+    }
+}
@@ -0,0 +1,148 @@
+package pt.tecnico.sirs.cryptology;
+
+import pt.tecnico.sirs.utils.Utils;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Parsed key material by file, dropped as soon as the file changes on disk
+public final class KeyCache {
+
+    @FunctionalInterface
+    public interface KeyParser<K> {
+        K parse(byte[] encoded) throws GeneralSecurityException;
+    }
+
+    private record Entry(Path path, String kind) {}
+
+    private static final KeyCache instance = new KeyCache();
+
+    private final Map<Entry, Object> entries = new ConcurrentHashMap<>();
+    private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final WatchService watchService;
+
+    private KeyCache() {
+        this.watchService = newWatchService();
+        if (watchService != null) {
+            Thread watcher = new Thread(this::watch, "key-cache-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    public static KeyCache getInstance() {
+        return instance;
+    }
+
+    private static WatchService newWatchService() {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    private static Path normalize(String path) {
+        return Paths.get(path).toAbsolutePath().normalize();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <K> K resolve(String path, String kind, KeyParser<K> parser) throws IOException, GeneralSecurityException {
+        Entry entry = new Entry(normalize(path), kind);
+        Object cached = entries.get(entry);
+        if (cached != null) {
+            hits.increment();
+            return (K) cached;
+        }
+        misses.increment();
+        register(entry.path().getParent());
+
+        long readGeneration = generation.get();
+        K parsed = parser.parse(Utils.readBytesFromFile(path));
+        entries.put(entry, parsed);
+        // The file changed while it was being read, so the parsed value may already be stale
+        if (generation.get() != readGeneration) entries.remove(entry, parsed);
+        return parsed;
+    }
+
+    public void invalidate(String path) {
+        invalidate(normalize(path));
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+        invalidations.increment();
+    }
+
+    private void invalidate(Path path) {
+        generation.incrementAndGet();
+        if (entries.keySet().removeIf(entry -> entry.path().equals(path)))
+            invalidations.increment();
+    }
+
+    private void register(Path directory) {
+        if (watchService == null || directory == null || !watchedDirectories.add(directory)) return;
+        try {
+            directory.register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE
+            );
+        } catch (IOException e) {
+            watchedDirectories.remove(directory);
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) invalidateAll();
+                    else invalidate(directory.resolve((Path) event.context()));
+                }
+                if (!key.reset()) watchedDirectories.remove(directory);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
@@ -17,19 +17,23 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
 public final class Operations {
+    private static final int GCM_TAG_LENGTH = 128;
 
     public static byte[] encryptData(SecretKey secretKey, byte[] message, byte[] iv)
             throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
             BadPaddingException, InvalidAlgorithmParameterException {
         IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        Cipher cipher = Engines.cipher();
         cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivParameterSpec);
 
         return cipher.doFinal(message);
@@ -40,22 +44,60 @@ public final class Operations {
             BadPaddingException, InvalidAlgorithmParameterException {
         IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
 
-        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        Cipher cipher = Engines.cipher();
         cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
 
         return cipher.doFinal(cipherText);
     }
 
+    public static ByteBuffer decryptData(SecretKey secretKey, ByteBuffer cipherText, byte[] iv)
+            throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+            BadPaddingException, InvalidAlgorithmParameterException, ShortBufferException {
+        IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
+
+        Cipher cipher = Engines.cipher();
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
+
+        ByteBuffer plainText = ByteBuffer.allocate(cipher.getOutputSize(cipherText.remaining()));
+        cipher.doFinal(cipherText.duplicate(), plainText);
+        return plainText.flip();
+    }
+
+    public static byte[] encryptAuthenticated(SecretKey secretKey, byte[] message, byte[] nonce)
+            throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+            BadPaddingException, InvalidAlgorithmParameterException {
+        Cipher cipher = Engines.authenticatedCipher();
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH, nonce));
+
+        return cipher.doFinal(message);
+    }
+
+    public static ByteBuffer decryptAuthenticated(SecretKey secretKey, ByteBuffer cipherText, byte[] nonce)
+            throws NoSuchPaddingException, InvalidKeyException, NoSuchAlgorithmException, IllegalBlockSizeException,
+            BadPaddingException, InvalidAlgorithmParameterException, ShortBufferException {
+        Cipher cipher = Engines.authenticatedCipher();
+        cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(GCM_TAG_LENGTH, nonce));
+
+        ByteBuffer plainText = ByteBuffer.allocate(cipher.getOutputSize(cipherText.remaining()));
+        cipher.doFinal(cipherText.duplicate(), plainText);
+        return plainText.flip();
+    }
+
     public static byte[] hash(byte[] message) throws NoSuchAlgorithmException {
-        final MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-        return  messageDigest.digest(message);
+        return Engines.digest().digest(message);
+    }
+
+    public static byte[] hmac(SecretKey secretKey, byte[] message) throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac mac = Engines.mac();
+        mac.init(secretKey);
+        return mac.doFinal(message);
     }
 
     public static byte[] messageSignature(PrivateKey privateKey, byte[] message)
             throws SignatureException, InvalidKeyException, NoSuchAlgorithmException {
-        byte[] digest = MessageDigest.getInstance("SHA-256").digest(message);
+        byte[] digest = Engines.digest().digest(message);
 
-        Signature signature = Signature.getInstance("SHA256withRSA");
+        Signature signature = Engines.signature();
         signature.initSign(privateKey);
         signature.update(digest);
 
@@ -64,13 +106,28 @@ public final class Operations {
 
     public static boolean messageValidation(PublicKey publicKey, byte[] message, byte[] messageSignature)
             throws SignatureException, InvalidKeyException, NoSuchAlgorithmException {
-        byte[] digest = MessageDigest.getInstance("SHA-256").digest(message);
+        return messageValidation(publicKey, ByteBuffer.wrap(message), ByteBuffer.wrap(messageSignature));
+    }
 
-        Signature signature = Signature.getInstance("SHA256withRSA");
+    public static boolean messageValidation(PublicKey publicKey, ByteBuffer message, ByteBuffer messageSignature)
+            throws SignatureException, InvalidKeyException, NoSuchAlgorithmException {
+        MessageDigest messageDigest = Engines.digest();
+        messageDigest.update(message.duplicate());
+        byte[] digest = messageDigest.digest();
+
+        Signature signature = Engines.signature();
         signature.initVerify(publicKey);
         signature.update(digest);
 
-        return signature.verify(messageSignature);
+        if (messageSignature.hasArray())
+            return signature.verify(
+                    messageSignature.array(),
+                    messageSignature.arrayOffset() + messageSignature.position(),
+                    messageSignature.remaining()
+            );
+        byte[] signatureBytes = new byte[messageSignature.remaining()];
+        messageSignature.duplicate().get(signatureBytes);
+        return signature.verify(signatureBytes);
     }
 
     public static byte[] generateSessionKey() {
@@ -90,8 +147,8 @@ public final class Operations {
             return Arrays.copyOf(
                     encryptData(
                         new SecretKeySpec(secretKey, "AES"),
-                        MessageDigest.getInstance("SHA-256").digest(secret.getBytes()),
-                        Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(ByteBuffer.allocate(Integer.BYTES).putInt(id).array()), 16)
+                        Engines.digest().digest(secret.getBytes()),
+                        Arrays.copyOf(Engines.digest().digest(ByteBuffer.allocate(Integer.BYTES).putInt(id).array()), 16)
                     )
                     , 16
             );
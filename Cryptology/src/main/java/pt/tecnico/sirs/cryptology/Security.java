@@ -1,5 +1,8 @@
 package pt.tecnico.sirs.cryptology;
 
+import pt.tecnico.sirs.utils.exceptions.TamperedMessageException;
+
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.util.Arrays;
 
@@ -7,8 +10,24 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
 
 public final class Security {
+    private static final int SIGNATURE_LENGTH = 256;
+    private static final int NONCE_LENGTH = 12;
+    private static final SecureRandom random = new SecureRandom();
+
+    // SIGNED envelopes carry an RSA signature, SEALED ones are only authenticated by the session key
+    public enum Mode {
+        SIGNED,
+        SEALED;
+
+        public static Mode of(String name) {
+            for (Mode mode : values())
+                if (mode.name().equals(name)) return mode;
+            return SIGNED;
+        }
+    }
 
     public static byte[] protect(byte[] message, SecretKey secretKey, PrivateKey privateKey, byte[] iv)
             throws SignatureException, InvalidKeyException, NoSuchAlgorithmException,
@@ -26,8 +45,8 @@ public final class Security {
             throws NoSuchPaddingException, SignatureException, NoSuchAlgorithmException, InvalidKeyException,
             IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException {
         byte[] protectedDocument = Operations.decryptData(secretKey, cryptogram, iv);
-        byte[] signature = Arrays.copyOfRange(protectedDocument, 0, 256);
-        byte[] message = Arrays.copyOfRange(protectedDocument, 256, protectedDocument.length);
+        byte[] signature = Arrays.copyOfRange(protectedDocument, 0, SIGNATURE_LENGTH);
+        byte[] message = Arrays.copyOfRange(protectedDocument, SIGNATURE_LENGTH, protectedDocument.length);
 
         return Operations.messageValidation(publicKey, message, signature);
     }
@@ -36,10 +55,76 @@ public final class Security {
             throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException,
             InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
         byte[] protectedDocument = Operations.decryptData(secretKey, cryptogram, iv);
-        byte[] message = Arrays.copyOfRange(protectedDocument, 256, protectedDocument.length);
-        byte[] document = new byte[message.length];
-        System.arraycopy(message, 0, document, 0, message.length);
-        return document;
+        return Arrays.copyOfRange(protectedDocument, SIGNATURE_LENGTH, protectedDocument.length);
+    }
+
+    // Decrypts once, verifies the signature and returns a read-only view of the message inside the decrypted document
+    public static ByteBuffer open(ByteBuffer cryptogram, SecretKey secretKey, PublicKey publicKey, byte[] iv)
+            throws NoSuchPaddingException, SignatureException, NoSuchAlgorithmException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException, ShortBufferException {
+        return verify(decrypt(cryptogram, secretKey, iv), publicKey);
+    }
+
+    // The two halves of open, for callers that account for them apart
+    public static ByteBuffer decrypt(ByteBuffer cryptogram, SecretKey secretKey, byte[] iv)
+            throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException, ShortBufferException {
+        return Operations.decryptData(secretKey, cryptogram, iv);
+    }
+
+    public static ByteBuffer verify(ByteBuffer protectedDocument, PublicKey publicKey)
+            throws SignatureException, NoSuchAlgorithmException, InvalidKeyException {
+        if (protectedDocument.remaining() < SIGNATURE_LENGTH) throw new TamperedMessageException();
+
+        ByteBuffer signature = protectedDocument.slice(0, SIGNATURE_LENGTH);
+        ByteBuffer message = protectedDocument.slice(SIGNATURE_LENGTH, protectedDocument.remaining() - SIGNATURE_LENGTH);
+        if (!Operations.messageValidation(publicKey, message, signature)) throw new TamperedMessageException();
+
+        return message.asReadOnlyBuffer();
+    }
+
+    public static ByteBuffer open(byte[] cryptogram, SecretKey secretKey, PublicKey publicKey, byte[] iv)
+            throws NoSuchPaddingException, SignatureException, NoSuchAlgorithmException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException, InvalidAlgorithmParameterException, ShortBufferException {
+        return open(ByteBuffer.wrap(cryptogram), secretKey, publicKey, iv);
+    }
+
+    public static byte[] seal(byte[] message, SecretKey secretKey)
+            throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException,
+            InvalidAlgorithmParameterException, IllegalBlockSizeException, BadPaddingException {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        byte[] cipherText = Operations.encryptAuthenticated(secretKey, message, nonce);
+
+        byte[] sealedDocument = new byte[NONCE_LENGTH + cipherText.length];
+        System.arraycopy(nonce, 0, sealedDocument, 0, NONCE_LENGTH);
+        System.arraycopy(cipherText, 0, sealedDocument, NONCE_LENGTH, cipherText.length);
+        return sealedDocument;
+    }
+
+    public static ByteBuffer unseal(ByteBuffer cryptogram, SecretKey secretKey)
+            throws NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException,
+            InvalidAlgorithmParameterException, IllegalBlockSizeException, ShortBufferException {
+        if (cryptogram.remaining() < NONCE_LENGTH) throw new TamperedMessageException();
+
+        ByteBuffer sealedDocument = cryptogram.duplicate();
+        byte[] nonce = new byte[NONCE_LENGTH];
+        sealedDocument.get(nonce);
+        try {
+            return Operations.decryptAuthenticated(secretKey, sealedDocument, nonce).asReadOnlyBuffer();
+        } catch (BadPaddingException e) {
+            throw new TamperedMessageException();
+        }
+    }
+
+    public static byte[] protect(byte[] message, Mode mode, SecretKey secretKey, PrivateKey privateKey, byte[] iv)
+            throws GeneralSecurityException {
+        return mode == Mode.SEALED ? seal(message, secretKey) : protect(message, secretKey, privateKey, iv);
+    }
+
+    public static ByteBuffer open(ByteBuffer cryptogram, Mode mode, SecretKey secretKey, PublicKey publicKey, byte[] iv)
+            throws GeneralSecurityException {
+        return mode == Mode.SEALED ? unseal(cryptogram, secretKey) : open(cryptogram, secretKey, publicKey, iv);
     }
 
 }
@@ -0,0 +1,148 @@
+package pt.tecnico.sirs.utils;
+
+import pt.tecnico.sirs.utils.exceptions.ReplayAttackException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+
+// Accepts each timestamp once while it is within the acceptance window of the local clock, remembering only that window
+public final class ReplayWindow {
+    private static final Duration DEFAULT_WINDOW = Duration.ofMinutes(5);
+    private static final int DEFAULT_BUCKETS_PER_WINDOW = 10;
+
+    private static final class Bucket {
+        private long epoch = Long.MIN_VALUE;
+        private final LongSet timestamps = new LongSet();
+    }
+
+    // Open addressing set of primitive longs, zero is tracked apart since it marks empty slots
+    private static final class LongSet {
+        private static final int INITIAL_CAPACITY = 16;
+        private long[] table = new long[INITIAL_CAPACITY];
+        private boolean hasZero;
+        private int size;
+
+        private boolean add(long value) {
+            if (value == 0) {
+                if (hasZero) return false;
+                hasZero = true;
+                size++;
+                return true;
+            }
+            if ((size + 1) * 2 > table.length) grow();
+            if (!insert(table, value)) return false;
+            size++;
+            return true;
+        }
+
+        private static boolean insert(long[] table, long value) {
+            int mask = table.length - 1;
+            int index = mix(value) & mask;
+            while (table[index] != 0) {
+                if (table[index] == value) return false;
+                index = (index + 1) & mask;
+            }
+            table[index] = value;
+            return true;
+        }
+
+        private static int mix(long value) {
+            long hash = value * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        private void grow() {
+            long[] grown = new long[table.length * 2];
+            for (long value : table)
+                if (value != 0) insert(grown, value);
+            table = grown;
+        }
+
+        private void clear() {
+            if (table.length == INITIAL_CAPACITY) Arrays.fill(table, 0);
+            else table = new long[INITIAL_CAPACITY];
+            hasZero = false;
+            size = 0;
+        }
+
+        private long footprint() {
+            return 16L + (long) table.length * Long.BYTES + 16L;
+        }
+    }
+
+    private final Clock clock;
+    private final long windowNanos;
+    private final long bucketNanos;
+    private final Bucket[] ring;
+
+    public ReplayWindow() {
+        this(DEFAULT_WINDOW, DEFAULT_BUCKETS_PER_WINDOW, Clock.systemUTC());
+    }
+
+    public ReplayWindow(Duration window, int bucketsPerWindow, Clock clock) {
+        this.clock = clock;
+        this.windowNanos = window.toNanos();
+        this.bucketNanos = Math.max(1, windowNanos / bucketsPerWindow);
+        // Accepted timestamps span two windows (past and future clock skew), plus one bucket at each edge
+        this.ring = new Bucket[2 * bucketsPerWindow + 3];
+        for (int i = 0; i < ring.length; i++)
+            ring[i] = new Bucket();
+    }
+
+    private static long toNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+    }
+
+    public void accept(OffsetDateTime timestamp) {
+        if (!tryAccept(timestamp)) throw new ReplayAttackException();
+    }
+
+    public synchronized boolean tryAccept(OffsetDateTime timestamp) {
+        long now = toNanos(clock.instant());
+        long nanos;
+        try {
+            nanos = toNanos(timestamp.toInstant());
+        } catch (ArithmeticException e) {
+            return false;
+        }
+        if (nanos < now - windowNanos || nanos > now + windowNanos) return false;
+
+        expire(now);
+        long epoch = Math.floorDiv(nanos, bucketNanos);
+        Bucket bucket = ring[(int) Math.floorMod(epoch, (long) ring.length)];
+        if (bucket.epoch != epoch) {
+            bucket.timestamps.clear();
+            bucket.epoch = epoch;
+        }
+        return bucket.timestamps.add(nanos);
+    }
+
+    // Buckets entirely older than the window can never accept a timestamp again
+    private void expire(long now) {
+        long oldest = Math.floorDiv(now - windowNanos, bucketNanos);
+        for (Bucket bucket : ring) {
+            if (bucket.epoch != Long.MIN_VALUE && bucket.epoch < oldest) {
+                bucket.timestamps.clear();
+                bucket.epoch = Long.MIN_VALUE;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (Bucket bucket : ring)
+            size += bucket.timestamps.size;
+        return size;
+    }
+
+    // Approximate retained heap in bytes
+    public synchronized long footprint() {
+        long footprint = 16L + 16L + (long) ring.length * 8;
+        for (Bucket bucket : ring)
+            footprint += 24L + bucket.timestamps.footprint();
+        return footprint;
+    }
+}
@@ -1,6 +1,7 @@
 package pt.tecnico.sirs.utils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import javax.json.*;
@@ -9,6 +10,32 @@ import org.apache.commons.codec.binary.Hex;
 
 public class Utils {
 
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) return -1;
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
     public static byte[] readBytesFromFile(String path) throws IOException {
         FileInputStream fis = new FileInputStream(path);
         byte[] content = new byte[fis.available()];
@@ -45,6 +72,10 @@ public class Utils {
         return Json.createReader(new ByteArrayInputStream(jsonBytes)).readObject();
     }
 
+    public static JsonObject deserializeJson(ByteBuffer jsonBytes) {
+        return Json.createReader(new ByteBufferInputStream(jsonBytes)).readObject();
+    }
+
     public static String byteToHex(byte[] bytes) {
         return Hex.encodeHexString(bytes);
     }
@@ -0,0 +1,7 @@
+package pt.tecnico.sirs.utils.exceptions;
+
+public class InvalidSessionException extends RuntimeException {
+    public InvalidSessionException() {
+        super("Unknown or expired session");
+    }
+}
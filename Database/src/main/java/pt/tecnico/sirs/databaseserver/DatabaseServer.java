@@ -2,8 +2,18 @@ package pt.tecnico.sirs.databaseserver;
 
 import pt.tecnico.sirs.cryptology.Operations;
 import pt.tecnico.sirs.databaseserver.grpc.DatabaseService;
+import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseEnvelopeInterceptor;
 import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseServerCryptographicManager;
+import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseSessionRegistry;
 import pt.tecnico.sirs.databaseserver.repository.DatabaseManager;
+import pt.tecnico.sirs.databaseserver.repository.core.AccountLocks;
+import pt.tecnico.sirs.databaseserver.repository.core.HibernateUtil;
+import pt.tecnico.sirs.telemetry.Metrics;
+import pt.tecnico.sirs.telemetry.MetricsInterceptor;
+import pt.tecnico.sirs.telemetry.MetricsServer;
+import pt.tecnico.sirs.telemetry.Tracing;
+import pt.tecnico.sirs.telemetry.TracingServerInterceptor;
+import pt.tecnico.sirs.telemetry.logging.Log;
 
 import java.io.File;
 import java.io.IOException;
@@ -14,21 +24,40 @@ import java.time.OffsetDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import io.grpc.*;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 
 public class DatabaseServer {
+    private static final int DEFAULT_BALANCE_SLOTS = 8;
     private final boolean debug;
     private final Server server;
     private final DatabaseManager state;
+    private final DatabaseSessionRegistry sessions;
+    private final DatabaseEnvelopeInterceptor envelopes;
+    private final ExecutorService cryptoExecutor;
+    private final MetricsServer metricsServer;
 
     public DatabaseServer(List<String> args, boolean debug) throws IOException, NoSuchAlgorithmException {
         this.debug = debug;
+        Tracing.fromEnvironment(args.get(1));
         final String databaseAddress = args.get(2);
         final int databasePort = Integer.parseInt(args.get(3));
 
-        this.state = new DatabaseManager(new DatabaseService(args.get(0), args.get(1), databaseAddress, databasePort, debug));
+        final int poolSize = System.getenv("database-pool-size") == null
+                ? HibernateUtil.DEFAULT_POOL_SIZE
+                : Integer.parseInt(System.getenv("database-pool-size"));
+
+        final boolean rowLocks = Boolean.parseBoolean(System.getenv("database-row-locks"));
+
+        // memory keeps every account in this process and loses them on shutdown
+        final DatabaseManager.Engine engine = DatabaseManager.Engine.of(System.getenv("database-engine"));
+
+        this.state = new DatabaseManager(new DatabaseService(args.get(0), args.get(1), databaseAddress, databasePort, debug), engine, poolSize, rowLocks);
 
 
         // Test add account
@@ -37,20 +66,66 @@ public class DatabaseServer {
         // Test order payment
         state.orderPayment("Bob", Operations.hash("12345".getBytes()), LocalDateTime.now(), new BigDecimal("1000"), "Last Tuesday's dinner", "Alice", OffsetDateTime.now());
 
+        // Opt-in split balances for high fan-in recipients
+        if (System.getenv("split-balance-holders") != null) {
+            final int slots = System.getenv("split-balance-slots") == null
+                    ? DEFAULT_BALANCE_SLOTS
+                    : Integer.parseInt(System.getenv("split-balance-slots"));
+            for (String holder : System.getenv("split-balance-holders").split(","))
+                if (!holder.isBlank()) state.splitBalance(holder.trim(), slots);
+        }
+
 
         final DatabaseServerCryptographicManager cryptoCore = new DatabaseServerCryptographicManager(
-                args.get(4), args.get(5), args.get(6), args.get(7)
+                args.get(4), args.get(5)
         );
+        this.sessions = new DatabaseSessionRegistry();
+        this.envelopes = new DatabaseEnvelopeInterceptor(cryptoCore, sessions);
+
+        // Calls are opened, served and sealed on this pool, never on the transport threads
+        final int cryptoThreads = System.getenv("database-crypto-threads") == null
+                ? Math.max(Runtime.getRuntime().availableProcessors(), poolSize)
+                : Integer.parseInt(System.getenv("database-crypto-threads"));
+        final AtomicInteger cryptoThreadIndex = new AtomicInteger();
+        this.cryptoExecutor = Executors.newFixedThreadPool(cryptoThreads, runnable -> {
+            Thread thread = new Thread(runnable, "database-crypto-" + cryptoThreadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
 
         this.server = Grpc.newServerBuilderForPort(
                 databasePort,
-                TlsServerCredentials.newBuilder().keyManager(new File(args.get(9)), new File(args.get(10))).build()
-        ).addService(new DatabaseServerImpl<>(state, cryptoCore, debug)).build();
+                TlsServerCredentials.newBuilder().keyManager(new File(args.get(7)), new File(args.get(8))).build()
+        ).executor(cryptoExecutor)
+                .addService(ServerInterceptors.intercept(new DatabaseServerImpl<>(state, cryptoCore, sessions, debug), envelopes, new MetricsInterceptor(), new TracingServerInterceptor()))
+                .build();
+
+        // Optional local scrape endpoint; the last interceptors run first, so RPC timings and spans include opening and sealing
+        this.metricsServer = MetricsServer.fromEnvironment();
+        if (metricsServer != null) registerGauges(Metrics.registry());
+    }
+
+    private void registerGauges(Metrics metrics) {
+        // Reading the pool or cache would open a session factory the in-memory engine never needed
+        if (state.isPersistent()) {
+            metrics.gauge("database_pool_active_connections", "Connections in use", () -> HibernateUtil.getPoolStatistics().getActiveConnections());
+            metrics.gauge("database_pool_idle_connections", "Connections idle in the pool", () -> HibernateUtil.getPoolStatistics().getIdleConnections());
+            metrics.gauge("database_pool_pending_threads", "Threads waiting for a connection", () -> HibernateUtil.getPoolStatistics().getThreadsAwaitingConnection());
+            for (String region : HibernateUtil.CACHE_REGIONS)
+                metrics.gauge("database_cache_hit_ratio_" + region.replaceAll("[^A-Za-z0-9_]", "_"), "Second level cache hit ratio of " + region, () -> HibernateUtil.getCacheHitRatio(region));
+        }
+        AccountLocks locks = state.getAccountLocks();
+        metrics.gauge("database_account_lock_acquisitions", "Account locks acquired", locks::getAcquisitions);
+        metrics.gauge("database_account_lock_contended", "Account locks that had to wait", locks::getContended);
+        metrics.gauge("database_transaction_retries", "Transactions run again after losing an update race", state::getRetries);
+        metrics.gauge("database_sessions", "Open database sessions", sessions::size);
+        metrics.gauge("database_envelopes_rejected", "Request envelopes that failed to open", envelopes::getRejected);
     }
 
     private void serverStartup() throws IOException {
         if(debug) System.out.println("Database: Starting up '" + state.getService().getServerServiceName() + "''s '" + state.getService().getServerName() + "' server at " + state.getService().getServerAddress() + ":" + state.getService().getServerPort());
         server.start();
+        if (metricsServer != null && debug) System.out.println("Database: metrics at http://localhost:" + metricsServer.getPort() + "/metrics");
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
                 serverShutdown();
@@ -62,7 +137,22 @@ public class DatabaseServer {
 
     private void serverShutdown() throws InterruptedException {
         if(debug) System.out.println("Database: Deleting '" + state.getService().getServerServiceName() + "''s '" + state.getService().getServerName() + "' server at " + state.getService().getServerAddress() + ":" + state.getService().getServerPort());
+        sessions.close();
+        if (debug) {
+            if (state.isPersistent()) {
+                HikariPoolMXBean pool = HibernateUtil.getPoolStatistics();
+                System.out.printf("Database: pool %d active, %d idle, %d waiting%n", pool.getActiveConnections(), pool.getIdleConnections(), pool.getThreadsAwaitingConnection());
+                for (String region : HibernateUtil.CACHE_REGIONS)
+                    System.out.printf("Database: cache '%s' hit ratio %.2f%n", region, HibernateUtil.getCacheHitRatio(region));
+            }
+            System.out.printf("Database: envelopes %d rejected%n", envelopes.getRejected());
+            AccountLocks locks = state.getAccountLocks();
+            System.out.printf("Database: account locks %d acquired, %d contended, %.3f ms waited, %.3f ms max wait%n", locks.getAcquisitions(), locks.getContended(), locks.getWaitNanos() / 1e6, locks.getMaxWaitNanos() / 1e6);
+        }
+        if (metricsServer != null) metricsServer.close();
+        Tracing.tracer().close();
         state.shutDown();
+        cryptoExecutor.shutdown();
         System.out.println("Shutting down.");
         if (server.awaitTermination(1, TimeUnit.SECONDS))
             System.exit(0);
@@ -79,15 +169,14 @@ public class DatabaseServer {
 
     public static void main(String[] args) throws Exception {
         System.out.println("Database Server");
-        final boolean debug = true;
+        // Debug output only when asked for, e.g. log-levels=database=debug
+        final boolean debug = Log.logger("database").isDebugEnabled();
 
         if (
             System.getenv("service-name") == null ||
             System.getenv("server-name") == null ||
             System.getenv("server-address") == null ||
             System.getenv("server-port") == null ||
-            System.getenv("path-iv") == null ||
-            System.getenv("path-secret-key") == null ||
             System.getenv("path-public-key") == null ||
             System.getenv("path-private-key") == null ||
             System.getenv("path-server-trust-chain") == null ||
@@ -100,13 +189,11 @@ public class DatabaseServer {
                     2.  <server-name>
                     3.  <server-address>
                     4.  <server-port>
-                    5.  <path-iv>
-                    6.  <path-secret-key>
-                    7.  <path-public-key>
-                    8.  <path-private-key>
-                    9.  <path-server-trust-chain>
-                    10. <path-server-cert>
-                    11. <path-server-key>
+                    5.  <path-public-key>
+                    6.  <path-private-key>
+                    7.  <path-server-trust-chain>
+                    8.  <path-server-cert>
+                    9.  <path-server-key>
                 """
             );
 
@@ -117,8 +204,6 @@ public class DatabaseServer {
                             System.getenv("server-name"),
                             System.getenv("server-address"),
                             System.getenv("server-port"),
-                            System.getenv("path-iv"),
-                            System.getenv("path-secret-key"),
                             System.getenv("path-public-key"),
                             System.getenv("path-private-key"),
                             System.getenv("path-server-trust-chain"),
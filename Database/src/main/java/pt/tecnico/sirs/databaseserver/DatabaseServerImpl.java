@@ -2,75 +2,78 @@ package pt.tecnico.sirs.databaseserver;
 
 import com.google.protobuf.ByteString;
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import pt.tecnico.sirs.contract.databaseserver.DatabaseServer.*;
+import pt.tecnico.sirs.contract.payloads.PayloadCodec;
+import pt.tecnico.sirs.databaseserver.dto.MovementCursorDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementPageDto;
+import pt.tecnico.sirs.databaseserver.grpc.DatabasePayloadCodec;
+import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseEnvelope;
 import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseServerCryptographicManager;
+import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseSession;
+import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseSessionRegistry;
 import pt.tecnico.sirs.databaseserver.repository.DatabaseOperations;
+import pt.tecnico.sirs.telemetry.Metrics;
+import pt.tecnico.sirs.telemetry.Stage;
+import pt.tecnico.sirs.telemetry.logging.Log;
+import pt.tecnico.sirs.telemetry.logging.Logger;
+import pt.tecnico.sirs.telemetry.logging.Redacted;
+import pt.tecnico.sirs.utils.ReplayWindow;
 import pt.tecnico.sirs.utils.Utils;
 import pt.tecnico.sirs.contract.databaseserver.DatabaseServiceGrpc.DatabaseServiceImplBase;
 import pt.tecnico.sirs.cryptology.Base;
 import pt.tecnico.sirs.cryptology.Operations;
-import pt.tecnico.sirs.utils.exceptions.ReplayAttackException;
+import pt.tecnico.sirs.cryptology.Security;
 import pt.tecnico.sirs.utils.exceptions.TamperedMessageException;
 
+import javax.crypto.spec.SecretKeySpec;
 import javax.json.*;
 
 import java.math.BigDecimal;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class DatabaseServerImpl<DatabaseManager extends DatabaseOperations> extends DatabaseServiceImplBase {
+    private static final Logger log = Log.logger("database");
     private final boolean debug;
     private final DatabaseManager databaseManager;
     private final DatabaseServerCryptographicManager crypto;
-    private final List<OffsetDateTime> timestamps = new ArrayList<>();
-    private Integer nonce;
-
-    public DatabaseServerImpl(DatabaseManager databaseManager, DatabaseServerCryptographicManager crypto, boolean debug) {
+    private final DatabaseSessionRegistry sessions;
+    private final DatabasePayloadCodec codec;
+    private final ReplayWindow timestamps = new ReplayWindow();
+    private final Metrics metrics = Metrics.registry();
+    private static final int MAX_PAGE_SIZE = 500;
+
+    public DatabaseServerImpl(DatabaseManager databaseManager, DatabaseServerCryptographicManager crypto,
+                              DatabaseSessionRegistry sessions, boolean debug) {
         this.debug = debug;
         this.databaseManager = databaseManager;
         this.crypto = crypto;
+        this.sessions = sessions;
+        this.codec = new DatabasePayloadCodec(crypto);
     }
 
     public boolean isDebug() {
         return debug;
     }
 
-    public List<OffsetDateTime> getTimestamps() {
+    public ReplayWindow getTimestamps() {
         return this.timestamps;
     }
 
-    public void addTimestamp(OffsetDateTime timestamp) {
-        this.timestamps.add(timestamp);
-    }
-
-    public boolean oldTimestampString(OffsetDateTime timestamp) {
-        return getTimestamps().contains(timestamp);
-    }
-
-    public Integer getNonce() {
-        return this.nonce;
-    }
-
-    public void setNonce(Integer nonce) {
-        this.nonce = nonce;
-    }
-
     @Override
     public void authenticate(AuthenticateRequest request, StreamObserver<AuthenticateResponse> responseObserver) {
         try {
             // Needham-Schroeder step 3
             JsonObject authenticateJson = Utils.deserializeJson(request.getRequest().toByteArray());
             
-            String timestampString = authenticateJson.getString("timestampString");
-            if (oldTimestampString(OffsetDateTime.parse(timestampString)))
-                throw new ReplayAttackException();
-            addTimestamp(OffsetDateTime.parse(timestampString));
+            getTimestamps().accept(OffsetDateTime.parse(authenticateJson.getString("timestampString")));
 
             JsonObject ticketJson = Utils.deserializeJson(
                 Operations.decryptData(
@@ -81,18 +84,29 @@ public final class DatabaseServerImpl<DatabaseManager extends DatabaseOperations
 
             if (!ticketJson.getString("source").equals("user")) throw new TamperedMessageException();
 
-            // Store session key and session iv
-            Files.write(Paths.get("resources/crypto/session/sessionKey"), Utils.hexToByte(ticketJson.getString("sessionKey")));
-            Files.write(Paths.get("resources/crypto/session/iv"), Utils.hexToByte(ticketJson.getString("sessionIv")));
+            // Envelope mode requested by the client, clients that do not ask keep signed envelopes
+            Security.Mode mode = Security.Mode.of(authenticateJson.getString("envelope", Security.Mode.SIGNED.name()));
+            // Payload format requested by the client, clients that do not ask keep the JSON payloads
+            PayloadCodec.Format format = PayloadCodec.Format.of(authenticateJson.getString("payload", PayloadCodec.Format.JSON.name()));
+            DatabaseSession session = sessions.open(
+                    new SecretKeySpec(Utils.hexToByte(ticketJson.getString("sessionKey")), "AES"),
+                    Utils.hexToByte(ticketJson.getString("sessionIv")),
+                    mode,
+                    format
+            );
 
             // Needham-Schroeder step 4
-            setNonce(new Random().nextInt());
             responseObserver.onNext(AuthenticateResponse.newBuilder().setResponse(
                 ByteString.copyFrom(
                     Operations.encryptData(
-                        Base.readSecretKey("resources/crypto/session/sessionKey"),
-                        Utils.serializeJson(Json.createObjectBuilder().add("nonce", getNonce()).build()),
-                        Base.readIv("resources/crypto/session/iv")
+                        session.getSessionKey(),
+                        Utils.serializeJson(Json.createObjectBuilder()
+                                .add("nonce", session.getNonce())
+                                .add("envelope", mode.name())
+                                .add("payload", format.name())
+                                .add("session", session.getId().toString())
+                                .build()),
+                        session.getIv()
             ))).build());
             responseObserver.onCompleted();
         } catch (Exception e) {
@@ -104,13 +118,15 @@ public final class DatabaseServerImpl<DatabaseManager extends DatabaseOperations
     public void stillAlive(StillAliveRequest request, StreamObserver<StillAliveResponse> responseObserver) {
         try {
             // Needham-Schroeder step 5
+            ByteBuffer envelope = request.getRequest().asReadOnlyByteBuffer();
+            DatabaseSession session = sessions.lookup(envelope);
             JsonObject stillAliveJson = Utils.deserializeJson(Operations.decryptData(
-                    Base.readSecretKey("resources/crypto/session/sessionKey"),
-                    request.getRequest().toByteArray(),
-                    Base.readIv("resources/crypto/session/iv")
+                    session.getSessionKey(),
+                    DatabaseSessionRegistry.payload(envelope),
+                    session.getIv()
             ));
 
-            if (nonce - stillAliveJson.getInt("nonce") != 1) throw new TamperedMessageException();
+            if (!session.confirm(stillAliveJson.getInt("nonce"))) throw new TamperedMessageException();
 
             responseObserver.onNext(StillAliveResponse.newBuilder().build());
             responseObserver.onCompleted();
@@ -121,23 +137,25 @@ public final class DatabaseServerImpl<DatabaseManager extends DatabaseOperations
 
     public void createAccount(CreateAccountRequest request, StreamObserver<CreateAccountResponse> responseObserver) {
         try {
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: create account");
+            log.debug("create account");
 
-            if (!crypto.check(request)) throw new TamperedMessageException();
-            JsonObject requestJson = Utils.deserializeJson(crypto.decrypt(request).getRequest().toByteArray());
-            List<String> usernames = new ArrayList<>();
-            for (int i = 0; i < requestJson.getJsonArray("usernames").size(); i++)
-                usernames.add(requestJson.getJsonArray("usernames").getString(i));
-            byte[] password = crypto.decryptPassword(requestJson.getJsonArray("passwords").getString(0));
-            OffsetDateTime timestamp = OffsetDateTime.parse(requestJson.getString("timestampString"));
+            DatabaseEnvelope envelope = DatabaseEnvelope.current();
+            DatabaseSession session = envelope.getSession();
+            ByteBuffer payload = envelope.getPayload();
+            long parse = Metrics.now();
+            DatabasePayloadCodec.NewAccount newAccount = codec.newAccount(session.getFormat(), payload);
+            metrics.record(Stage.PARSE, parse);
+            List<String> usernames = newAccount.usernames();
+            byte[] password = newAccount.password();
+            OffsetDateTime timestamp = newAccount.timestamp();
 
-            if (isDebug()) System.out.printf("\t\tUsername: %s\n\t\tPassword (Hex): %s\n", String.join(" ", usernames), Utils.byteToHex(password));
+            log.debug("username {}, password {}", usernames, Redacted.of(password));
 
             databaseManager.createAccount(usernames, password, BigDecimal.ZERO, timestamp);
         
-            responseObserver.onNext(crypto.encrypt(CreateAccountResponse.newBuilder().build()));
+            responseObserver.onNext(CreateAccountResponse.newBuilder().build());
             responseObserver.onCompleted();
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: create account successful");
+            log.debug("create account successful");
         } catch (Exception e) {
             responseObserver.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
         }
@@ -145,21 +163,25 @@ public final class DatabaseServerImpl<DatabaseManager extends DatabaseOperations
 
     public void deleteAccount(DeleteAccountRequest request, StreamObserver<DeleteAccountResponse> responseObserver) {
         try {
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: delete account");
+            log.debug("delete account");
 
-            if (!crypto.check(request)) throw new TamperedMessageException();
-            JsonObject requestJson = Utils.deserializeJson(crypto.decrypt(request).getRequest().toByteArray());
-            String username = requestJson.getString("username");
-            byte[] password = crypto.decryptPassword(requestJson.getString("password"));
-            OffsetDateTime timestamp = OffsetDateTime.parse(requestJson.getString("timestampString"));
+            DatabaseEnvelope envelope = DatabaseEnvelope.current();
+            DatabaseSession session = envelope.getSession();
+            ByteBuffer payload = envelope.getPayload();
+            long parse = Metrics.now();
+            DatabasePayloadCodec.Caller caller = codec.caller(session.getFormat(), payload);
+            metrics.record(Stage.PARSE, parse);
+            String username = caller.username();
+            byte[] password = caller.password();
+            OffsetDateTime timestamp = caller.timestamp();
 
-            if (isDebug()) System.out.printf("\t\tUsername: %s\n\t\tPassword (Hex): %s\n", username, Utils.byteToHex(password));
+            log.debug("username {}, password {}", username, Redacted.of(password));
 
             databaseManager.deleteAccount(username, password, timestamp);
         
-            responseObserver.onNext(crypto.encrypt(DeleteAccountResponse.newBuilder().build()));
+            responseObserver.onNext(DeleteAccountResponse.newBuilder().build());
             responseObserver.onCompleted();
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: delete account successful");
+            log.debug("delete account successful");
         } catch (Exception e) {
             responseObserver.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
         }
@@ -168,24 +190,25 @@ public final class DatabaseServerImpl<DatabaseManager extends DatabaseOperations
     @Override
     public void balance(BalanceRequest request, StreamObserver<BalanceResponse> responseObserver) {
         try {
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: balance");
+            log.debug("balance");
 
-            if (!crypto.check(request)) throw new TamperedMessageException();
-            JsonObject requestJson = Utils.deserializeJson(crypto.decrypt(request).getRequest().toByteArray());
-            String username = requestJson.getString("username");
-            byte[] password = crypto.decryptPassword(requestJson.getString("password"));
-            OffsetDateTime timestamp = OffsetDateTime.parse(requestJson.getString("timestampString"));
+            DatabaseEnvelope envelope = DatabaseEnvelope.current();
+            DatabaseSession session = envelope.getSession();
+            ByteBuffer payload = envelope.getPayload();
+            long parse = Metrics.now();
+            DatabasePayloadCodec.Caller caller = codec.caller(session.getFormat(), payload);
+            metrics.record(Stage.PARSE, parse);
+            String username = caller.username();
+            byte[] password = caller.password();
+            OffsetDateTime timestamp = caller.timestamp();
 
-            if (isDebug()) System.out.printf("\t\tUsername: %s\n\t\tPassword (Hex): %s\n", username, Utils.byteToHex(password));
+            log.debug("username {}, password {}", username, Redacted.of(password));
 
             BigDecimal balance = databaseManager.balance(username, password, timestamp);
 
-            responseObserver.onNext(crypto.encrypt(BalanceResponse.newBuilder().setResponse(
-                    ByteString.copyFrom(
-                            Utils.serializeJson(Utils.createJson(List.of("balance"), List.of(balance.toString())))
-            )).build()));
+            responseObserver.onNext(BalanceResponse.newBuilder().setResponse(codec.balance(session.getFormat(), balance)).build());
             responseObserver.onCompleted();
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: balance successful");
+            log.debug("balance successful");
         } catch (Exception e) {
             responseObserver.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
         }
@@ -193,50 +216,103 @@ public final class DatabaseServerImpl<DatabaseManager extends DatabaseOperations
 
     public void getMovements(GetMovementsRequest request, StreamObserver<GetMovementsResponse> responseObserver) {
         try {
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: get account movements");
-
-            if (!crypto.check(request)) throw new TamperedMessageException();
-            JsonObject requestJson = Utils.deserializeJson(crypto.decrypt(request).getRequest().toByteArray());
-            String username = requestJson.getString("username");
-            byte[] password = crypto.decryptPassword(requestJson.getString("password"));
-            OffsetDateTime timestamp = OffsetDateTime.parse(requestJson.getString("timestampString"));
+            log.debug("get account movements");
 
-            if (isDebug()) System.out.printf("\t\tUsername: %s\n\t\tPassword (Hex): %s\n", username, Utils.byteToHex(password));
+            DatabaseEnvelope envelope = DatabaseEnvelope.current();
+            DatabaseSession session = envelope.getSession();
+            ByteBuffer payload = envelope.getPayload();
+            long parse = Metrics.now();
+            DatabasePayloadCodec.Caller caller = codec.caller(session.getFormat(), payload);
+            metrics.record(Stage.PARSE, parse);
+            String username = caller.username();
+            byte[] password = caller.password();
+            OffsetDateTime timestamp = caller.timestamp();
 
-            JsonArrayBuilder expenses = databaseManager.getMovements(username, password, timestamp);
+            log.debug("username {}, password {}", username, Redacted.of(password));
 
-            JsonObject responseJson = Json.createObjectBuilder().add("movements", expenses).build();
+            List<MovementDto> movements = databaseManager.getMovements(username, password, timestamp);
 
-            responseObserver.onNext(crypto.encrypt(GetMovementsResponse.newBuilder().setResponse(
-                    ByteString.copyFrom(Utils.serializeJson(responseJson))
-            ).build()));
+            responseObserver.onNext(GetMovementsResponse.newBuilder().setResponse(codec.movements(session.getFormat(), movements)).build());
             responseObserver.onCompleted();
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: get account movements successful");
+            log.debug("get account movements successful");
         } catch (Exception e) {
             responseObserver.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
         }
     }
 
-    public void addExpense(AddExpenseRequest request, StreamObserver<AddExpenseResponse> responseObserver) {
+    @Override
+    public void streamMovements(StreamMovementsRequest request, StreamObserver<StreamMovementsResponse> responseObserver) {
         try {
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: add expense");
+            log.debug("stream account movements");
+
+            DatabaseEnvelope envelope = DatabaseEnvelope.current();
+            DatabaseSession session = envelope.getSession();
+            ByteBuffer payload = envelope.getPayload();
+            long parse = Metrics.now();
+            DatabasePayloadCodec.MovementsQuery query = codec.movementsQuery(session.getFormat(), payload);
+            metrics.record(Stage.PARSE, parse);
+            String username = query.caller().username();
+            byte[] password = query.caller().password();
+            OffsetDateTime timestamp = query.caller().timestamp();
+            int pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, query.pageSize()));
+            LocalDateTime from = query.from(), to = query.to();
+            MovementCursorDto cursor = query.cursor();
+
+            log.debug("username {}, password {}, page size {}, from {}, to {}", username, Redacted.of(password), pageSize, from, to);
+
+            Iterator<MovementPageDto> pages = databaseManager.streamMovements(username, password, from, to, pageSize, cursor, timestamp);
+
+            // Every page is read and sealed only once the transport can take it, so a slow client holds back the
+            // reads instead of the whole history being buffered for it
+            ServerCallStreamObserver<StreamMovementsResponse> call = (ServerCallStreamObserver<StreamMovementsResponse>) responseObserver;
+            AtomicBoolean done = new AtomicBoolean();
+            call.setOnCancelHandler(() -> done.set(true));
+            call.setOnReadyHandler(() -> sendPages(call, pages, session.getFormat(), done));
+        } catch (Exception e) {
+            responseObserver.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
+        }
+    }
 
-            if (!crypto.check(request)) throw new TamperedMessageException();
-            JsonObject requestJson = Utils.deserializeJson(crypto.decrypt(request).getRequest().toByteArray());
-            String username = requestJson.getString("username");
-            byte[] password = crypto.decryptPassword(requestJson.getString("password"));
-            LocalDateTime date = LocalDateTime.parse(requestJson.getString("date"));
-            BigDecimal amount = new BigDecimal(requestJson.getString("amount"));
-            String description = requestJson.getString("description");
-            OffsetDateTime timestamp = OffsetDateTime.parse(requestJson.getString("timestampString"));
+    // Runs each time the call turns ready, until the transport is full again or the last page went out
+    private void sendPages(ServerCallStreamObserver<StreamMovementsResponse> call, Iterator<MovementPageDto> pages,
+                           PayloadCodec.Format format, AtomicBoolean done) {
+        try {
+            while (!done.get() && call.isReady() && pages.hasNext())
+                call.onNext(StreamMovementsResponse.newBuilder().setResponse(codec.page(format, pages.next())).build());
+            if (!pages.hasNext() && done.compareAndSet(false, true)) {
+                call.onCompleted();
+                log.debug("stream account movements successful");
+            }
+        } catch (Exception e) {
+            if (done.compareAndSet(false, true))
+                call.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
+        }
+    }
 
-            if (isDebug()) System.out.printf("\t\tUsername: %s\n\t\tPassword (Hex): %s\n\t\tDate: %s\n\t\tAmount: %s\n\t\tDescription: %s\n", username, Utils.byteToHex(password), date, amount, description);
+    public void addExpense(AddExpenseRequest request, StreamObserver<AddExpenseResponse> responseObserver) {
+        try {
+            log.debug("add expense");
+
+            DatabaseEnvelope envelope = DatabaseEnvelope.current();
+            DatabaseSession session = envelope.getSession();
+            ByteBuffer payload = envelope.getPayload();
+            long parse = Metrics.now();
+            DatabasePayloadCodec.Expense expense = codec.expense(session.getFormat(), payload);
+            metrics.record(Stage.PARSE, parse);
+            String username = expense.caller().username();
+            byte[] password = expense.caller().password();
+            OffsetDateTime timestamp = expense.caller().timestamp();
+            LocalDateTime date = expense.date();
+            BigDecimal amount = expense.amount();
+            String description = expense.description();
+
+            log.debug("username {}, password {}, date {}, amount {}, description {}", username, Redacted.of(password), date, amount, description);
 
             databaseManager.addExpense(username, password, date, amount, description, timestamp);
         
-            responseObserver.onNext(crypto.encrypt(AddExpenseResponse.newBuilder().build()));
+            responseObserver.onNext(AddExpenseResponse.newBuilder().build());
             responseObserver.onCompleted();
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: add expense successful");
+            log.debug("add expense successful");
         } catch (Exception e) {
             responseObserver.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
         }
@@ -244,28 +320,31 @@ public final class DatabaseServerImpl<DatabaseManager extends DatabaseOperations
 
     public void orderPayment(OrderPaymentRequest request, StreamObserver<OrderPaymentResponse> responseObserver) {
         try {
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: order payment");
-
-            if (!crypto.check(request)) throw new TamperedMessageException();
-            JsonObject requestJson = Utils.deserializeJson(crypto.decrypt(request).getRequest().toByteArray());
-            String username = requestJson.getString("username");
-            byte[] password = crypto.decryptPassword(requestJson.getString("password"));
-            LocalDateTime date = LocalDateTime.parse(requestJson.getString("date"));
-            BigDecimal amount = new BigDecimal(requestJson.getString("amount"));
-            String description = requestJson.getString("description");
-            String recipient = requestJson.getString("recipient");
-            OffsetDateTime timestamp = OffsetDateTime.parse(requestJson.getString("timestampString"));
-
-            if (isDebug()) System.out.printf("\t\tUsername: %s\n\t\tPassword (Hex): %s\n\t\tRecipient: %s\n\t\tDate: %s\n\t\tAmount: %s\n\t\tDescription: %s\n", username, Utils.byteToHex(password), recipient, date, amount, description);
+            log.debug("order payment");
+
+            DatabaseEnvelope envelope = DatabaseEnvelope.current();
+            DatabaseSession session = envelope.getSession();
+            ByteBuffer payload = envelope.getPayload();
+            long parse = Metrics.now();
+            DatabasePayloadCodec.Payment payment = codec.payment(session.getFormat(), payload);
+            metrics.record(Stage.PARSE, parse);
+            String username = payment.caller().username();
+            byte[] password = payment.caller().password();
+            OffsetDateTime timestamp = payment.caller().timestamp();
+            LocalDateTime date = payment.date();
+            BigDecimal amount = payment.amount();
+            String description = payment.description();
+            String recipient = payment.recipient();
+
+            log.debug("username {}, password {}, recipient {}, date {}, amount {}, description {}", username, Redacted.of(password), recipient, date, amount, description);
 
             databaseManager.orderPayment(username, password, date, amount, description, recipient, timestamp);
 
-            responseObserver.onNext(crypto.encrypt(OrderPaymentResponse.newBuilder().build()));
+            responseObserver.onNext(OrderPaymentResponse.newBuilder().build());
             responseObserver.onCompleted();
-            if (isDebug()) System.out.println("\tDatabaseServerImpl: order payment successful");
+            log.debug("order payment successful");
         } catch (Exception e) {
             responseObserver.onError(Status.ABORTED.withDescription(e.getMessage()).asRuntimeException());
         }
     }
-
 }
@@ -8,6 +8,7 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = @Index(name = "approval_payment_ref_index", columnList = "paymentRefIndex"))
 public class Approval implements Serializable {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -79,11 +80,15 @@ public class Approval implements Serializable {
     @Column(nullable = false, columnDefinition = "bytea")
     private LocalDateTime approvalDate;
 
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] paymentRefIndex;
+
     public Approval() {}
 
     public Approval(UUID holder, UUID reference, LocalDateTime date) {
         this.holder = holder;
         this.paymentRef = reference;
+        this.paymentRefIndex = BlindIndex.of(reference);
         this.approvalDate = date;
     }
 
@@ -0,0 +1,88 @@
+package pt.tecnico.sirs.databaseserver.domain;
+
+import javax.persistence.*;
+
+import org.hibernate.annotations.ColumnTransformer;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.UUID;
+
+// One shard of a split account balance; credits land on a random slot so they do not all rewrite the same row
+@Entity
+@Table(indexes = @Index(name = "balance_slot_account_index", columnList = "accountIndex, slot", unique = true))
+public class BalanceSlot implements Serializable {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @ColumnTransformer(
+        read = """
+            pgp_sym_decrypt(
+                id,
+                'balance'
+            )
+            """,
+        write = """
+            pgp_sym_encrypt(
+                ?::text,
+                'balance'
+            )
+            """
+    )
+    @Column(unique = true, nullable = false, columnDefinition = "bytea")
+    private long id;
+
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] accountIndex;
+
+    @Column(nullable = false)
+    private int slot;
+
+    @ColumnTransformer(
+        read = """
+            pgp_sym_decrypt(
+                amount,
+                'balance'
+            )::numeric
+            """,
+        write = """
+            pgp_sym_encrypt(
+                ?::text,
+                'balance'
+            )
+            """
+    )
+    @Column(nullable = false, columnDefinition = "bytea")
+    private BigDecimal amount;
+
+    @Version
+    @Column(nullable = false)
+    private long version;
+
+    public BalanceSlot() {}
+
+    public BalanceSlot(UUID account, int slot) {
+        this.accountIndex = BlindIndex.of(account);
+        this.slot = slot;
+        this.amount = BigDecimal.ZERO;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void credit(BigDecimal amount) {
+        this.amount = this.amount.add(amount);
+    }
+}
@@ -2,7 +2,11 @@ package pt.tecnico.sirs.databaseserver.domain;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.ColumnTransformer;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
@@ -10,6 +14,9 @@ import java.util.*;
 
 
 @Entity
+@Table(indexes = @Index(name = "account_number_index", columnList = "numberIndex", unique = true))
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "bank-account")
+@NaturalIdCache(region = "bank-account-number")
 public class BankAccount implements Serializable {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -98,8 +105,22 @@ public class BankAccount implements Serializable {
     @Column(nullable = false, columnDefinition = "bytea")
     private String currency;
 
+    @NaturalId
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] numberIndex;
+
+    // Zero unless the balance is split across that many BalanceSlot rows
+    @Column(nullable = false)
+    private int balanceSlots;
+
+    // Checked on every update, so concurrent moves on the same account cannot both commit
+    @Version
+    @Column(nullable = false)
+    private long version;
+
     public BankAccount(byte[] passwords, BigDecimal initialDeposit) {
         this.number = UUID.randomUUID();
+        this.numberIndex = BlindIndex.of(number);
         this.passwords = passwords;
         this.balance = initialDeposit;
         this.currency = "EUR";
@@ -128,6 +149,22 @@ public class BankAccount implements Serializable {
         return this.balance;
     }
 
+    public int getBalanceSlots() {
+        return this.balanceSlots;
+    }
+
+    public boolean isSplit() {
+        return this.balanceSlots > 0;
+    }
+
+    public void split(int balanceSlots) {
+        this.balanceSlots = balanceSlots;
+    }
+
+    public long getVersion() {
+        return this.version;
+    }
+
     public String getCurrency() {
         return this.currency;
     }
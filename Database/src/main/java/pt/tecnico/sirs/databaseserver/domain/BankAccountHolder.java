@@ -2,12 +2,22 @@ package pt.tecnico.sirs.databaseserver.domain;
 
 import javax.persistence.*;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.ColumnTransformer;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import java.io.Serializable;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "holder_name_index", columnList = "nameIndex", unique = true),
+        @Index(name = "holder_account_number_index", columnList = "accountNumberIndex")
+})
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "bank-account-holder")
+@NaturalIdCache(region = "bank-account-holder-name")
 public class BankAccountHolder implements Serializable {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -79,6 +89,13 @@ public class BankAccountHolder implements Serializable {
     )
     @Column(unique = true, nullable = false, columnDefinition = "bytea")
     private UUID number;
+
+    @NaturalId
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] nameIndex;
+
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] accountNumberIndex;
     
     public BankAccountHolder() {}
 
@@ -86,6 +103,8 @@ public class BankAccountHolder implements Serializable {
         this.number = UUID.randomUUID();
         this.accountNumber = accountNumber;
         this.name = holder;
+        this.nameIndex = BlindIndex.of(holder);
+        this.accountNumberIndex = BlindIndex.of(accountNumber);
     }
 
     public void setId(long id) {
@@ -0,0 +1,52 @@
+package pt.tecnico.sirs.databaseserver.domain;
+
+import pt.tecnico.sirs.cryptology.Base;
+import pt.tecnico.sirs.cryptology.Operations;
+import pt.tecnico.sirs.utils.Utils;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+// Keyed HMAC-SHA256 of equality-searched columns, so lookups use a btree index instead of decrypting every row. The
+// key never leaves this machine: it is generated on the first start and every index already written depends on it
+public final class BlindIndex {
+    private static final String INDEX_KEY_PATH = "resources/crypto/database/indexKey";
+    private static final int INDEX_KEY_BYTES = 32;
+    private static final SecretKey indexKey = readIndexKey();
+
+    private BlindIndex() {}
+
+    private static SecretKey readIndexKey() {
+        try {
+            Path path = Path.of(INDEX_KEY_PATH);
+            if (Files.notExists(path)) {
+                byte[] key = new byte[INDEX_KEY_BYTES];
+                new SecureRandom().nextBytes(key);
+                Files.createDirectories(path.getParent());
+                Base.writeKeyMaterial(INDEX_KEY_PATH, key);
+            }
+            return new SecretKeySpec(Utils.readBytesFromFile(INDEX_KEY_PATH), "HmacSHA256");
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static byte[] of(String value) {
+        try {
+            return Operations.hmac(indexKey, value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static byte[] of(UUID value) {
+        return of(value.toString());
+    }
+}
@@ -6,6 +6,8 @@ import pt.tecnico.sirs.databaseserver.dto.MovementDto;
 import javax.persistence.*;
 
 import org.hibernate.annotations.ColumnTransformer;
+import org.hibernate.annotations.Generated;
+import org.hibernate.annotations.GenerationTime;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
@@ -14,7 +16,39 @@ import java.util.Optional;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "movement_account_from_sequence_index", columnList = "accountFromIndex, movementSequence"),
+        @Index(name = "movement_account_to_sequence_index", columnList = "accountToIndex, movementSequence")
+})
+@SqlResultSetMappings({
+        @SqlResultSetMapping(
+                name = Movement.MOVEMENT_DTO_MAPPING,
+                classes = @ConstructorResult(targetClass = MovementDto.class, columns = {
+                        @ColumnResult(name = "movementRef", type = UUID.class),
+                        @ColumnResult(name = "account", type = UUID.class),
+                        @ColumnResult(name = "date", type = LocalDateTime.class),
+                        @ColumnResult(name = "amount", type = BigDecimal.class),
+                        @ColumnResult(name = "description", type = String.class),
+                        @ColumnResult(name = "currency", type = String.class)
+                })
+        ),
+        @SqlResultSetMapping(
+                name = Movement.MOVEMENT_PAGE_MAPPING,
+                classes = @ConstructorResult(targetClass = MovementDto.class, columns = {
+                        @ColumnResult(name = "movementRef", type = UUID.class),
+                        @ColumnResult(name = "account", type = UUID.class),
+                        @ColumnResult(name = "date", type = LocalDateTime.class),
+                        @ColumnResult(name = "amount", type = BigDecimal.class),
+                        @ColumnResult(name = "description", type = String.class),
+                        @ColumnResult(name = "currency", type = String.class)
+                }),
+                columns = @ColumnResult(name = "sequence", type = Long.class)
+        )
+})
 public class Movement implements Serializable {
+    public static final String MOVEMENT_DTO_MAPPING = "MovementDtoMapping";
+    public static final String MOVEMENT_PAGE_MAPPING = "MovementPageMapping";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @ColumnTransformer(
@@ -56,7 +90,7 @@ public class Movement implements Serializable {
             pgp_sym_decrypt(
                 movementDate,
                 'movement'
-            )
+            )::timestamp
             """,
         write = """
             pgp_sym_encrypt(
@@ -153,9 +187,22 @@ public class Movement implements Serializable {
     @Column(nullable = false, columnDefinition = "bytea")
     private String currency;
 
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] accountFromIndex;
+
+    @Column(columnDefinition = "bytea")
+    private byte[] accountToIndex;
+
+    // Plaintext, so pages of an account's movements are read in recording order straight off its two indexes;
+    // it only tells apart the order rows were written in, which the table already shows
+    @Generated(GenerationTime.INSERT)
+    @Column(nullable = false, insertable = false, updatable = false, columnDefinition = "bigserial")
+    private long movementSequence;
+
     public Movement(MovementDto movement) {
         this();
         this.accountFrom = movement.accountFrom();
+        this.accountFromIndex = BlindIndex.of(movement.accountFrom());
         this.movementDate = movement.date();
         this.amount = movement.amount();
         this.description = movement.description();
@@ -166,6 +213,8 @@ public class Movement implements Serializable {
         this();
         this.accountFrom = order.accountFrom();
         this.accountTo = order.accountTo();
+        this.accountFromIndex = BlindIndex.of(order.accountFrom());
+        this.accountToIndex = BlindIndex.of(order.accountTo());
         this.movementDate = order.date();
         this.amount = order.amount();
         this.description = order.description();
@@ -10,6 +10,7 @@ import java.util.Optional;
 import java.util.UUID;
 
 @Entity
+@Table(indexes = @Index(name = "payment_accounts_index", columnList = "accountFromIndex, accountToIndex"))
 public class Payment implements Serializable {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -182,11 +183,19 @@ public class Payment implements Serializable {
     @Column(nullable = false, columnDefinition = "bytea")
     private String currency;
 
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] accountFromIndex;
+
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] accountToIndex;
+
     public Payment() {}
 
     public Payment(UUID accountFrom, UUID accountTo, BigDecimal amount, LocalDateTime date, String description, String currency) {
         this.accountFrom = accountFrom;
         this.accountTo = accountTo;
+        this.accountFromIndex = BlindIndex.of(accountFrom);
+        this.accountToIndex = BlindIndex.of(accountTo);
         this.amount = amount;
         this.requestDate = date;
         this.description = description;
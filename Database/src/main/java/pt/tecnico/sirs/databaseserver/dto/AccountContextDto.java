@@ -0,0 +1,5 @@
+package pt.tecnico.sirs.databaseserver.dto;
+
+// Caller's holder and account, resolved once per request and handed to every service that needs them
+public record AccountContextDto(HolderDto holder, BankAccountDto account) {
+}
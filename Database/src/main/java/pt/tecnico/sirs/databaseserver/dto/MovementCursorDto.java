@@ -0,0 +1,4 @@
+package pt.tecnico.sirs.databaseserver.dto;
+
+public record MovementCursorDto(long movement) {
+}
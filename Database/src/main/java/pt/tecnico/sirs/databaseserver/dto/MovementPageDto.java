@@ -0,0 +1,6 @@
+package pt.tecnico.sirs.databaseserver.dto;
+
+import java.util.List;
+
+public record MovementPageDto(List<MovementDto> movements, boolean last, MovementCursorDto cursor) {
+}
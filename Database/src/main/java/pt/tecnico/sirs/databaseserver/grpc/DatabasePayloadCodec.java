@@ -0,0 +1,209 @@
+package pt.tecnico.sirs.databaseserver.grpc;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import pt.tecnico.sirs.contract.payloads.PayloadCodec;
+import pt.tecnico.sirs.contract.payloads.Payloads.*;
+import pt.tecnico.sirs.databaseserver.dto.MovementCursorDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementPageDto;
+import pt.tecnico.sirs.databaseserver.grpc.crypto.DatabaseServerCryptographicManager;
+import pt.tecnico.sirs.utils.Utils;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Every request shape the database serves, read from and answered in the payload format of the caller's session
+public final class DatabasePayloadCodec {
+    public record Caller(String username, byte[] password, OffsetDateTime timestamp) {}
+    public record NewAccount(List<String> usernames, byte[] password, OffsetDateTime timestamp) {}
+    public record MovementsQuery(Caller caller, int pageSize, LocalDateTime from, LocalDateTime to, MovementCursorDto cursor) {}
+    public record Expense(Caller caller, LocalDateTime date, BigDecimal amount, String description) {}
+    public record Payment(Caller caller, LocalDateTime date, BigDecimal amount, String description, String recipient) {}
+
+    private final DatabaseServerCryptographicManager crypto;
+
+    public DatabasePayloadCodec(DatabaseServerCryptographicManager crypto) {
+        this.crypto = crypto;
+    }
+
+    private static boolean typed(PayloadCodec.Format format) {
+        return format == PayloadCodec.Format.PROTOBUF;
+    }
+
+    public Caller caller(PayloadCodec.Format format, ByteBuffer payload) throws InvalidProtocolBufferException {
+        return typed(format) ? caller(Credentials.parseFrom(payload)) : caller(Utils.deserializeJson(payload));
+    }
+
+    public NewAccount newAccount(PayloadCodec.Format format, ByteBuffer payload) throws InvalidProtocolBufferException {
+        if (typed(format)) {
+            CreateAccountPayload request = CreateAccountPayload.parseFrom(payload);
+            return new NewAccount(
+                    request.getUsernamesList(),
+                    request.getPasswords(0).toByteArray(),
+                    PayloadCodec.offsetDateTime(request.getTimestamp())
+            );
+        }
+        JsonObject request = Utils.deserializeJson(payload);
+        List<String> usernames = new ArrayList<>();
+        for (int i = 0; i < request.getJsonArray("usernames").size(); i++)
+            usernames.add(request.getJsonArray("usernames").getString(i));
+        return new NewAccount(
+                usernames,
+                crypto.decryptPassword(request.getJsonArray("passwords").getString(0)),
+                OffsetDateTime.parse(request.getString("timestampString"))
+        );
+    }
+
+    public MovementsQuery movementsQuery(PayloadCodec.Format format, ByteBuffer payload) throws InvalidProtocolBufferException {
+        if (typed(format)) {
+            StreamMovementsPayload request = StreamMovementsPayload.parseFrom(payload);
+            return new MovementsQuery(
+                    caller(request.getCredentials()),
+                    request.getPageSize(),
+                    request.hasFrom() ? PayloadCodec.localDateTime(request.getFrom()) : null,
+                    request.hasTo() ? PayloadCodec.localDateTime(request.getTo()) : null,
+                    request.hasCursor() ? new MovementCursorDto(request.getCursor().getMovement()) : null
+            );
+        }
+        JsonObject request = Utils.deserializeJson(payload);
+        return new MovementsQuery(
+                caller(request),
+                request.getInt("pageSize"),
+                request.containsKey("from") ? LocalDateTime.parse(request.getString("from")) : null,
+                request.containsKey("to") ? LocalDateTime.parse(request.getString("to")) : null,
+                request.containsKey("cursor")
+                        ? new MovementCursorDto(request.getJsonObject("cursor").getJsonNumber("movement").longValueExact())
+                        : null
+        );
+    }
+
+    public Expense expense(PayloadCodec.Format format, ByteBuffer payload) throws InvalidProtocolBufferException {
+        if (typed(format)) {
+            ExpensePayload request = ExpensePayload.parseFrom(payload);
+            return new Expense(
+                    caller(request.getCredentials()),
+                    PayloadCodec.localDateTime(request.getDate()),
+                    PayloadCodec.amount(request.getAmount()),
+                    request.getDescription()
+            );
+        }
+        JsonObject request = Utils.deserializeJson(payload);
+        return new Expense(
+                caller(request),
+                LocalDateTime.parse(request.getString("date")),
+                new BigDecimal(request.getString("amount")),
+                request.getString("description")
+        );
+    }
+
+    public Payment payment(PayloadCodec.Format format, ByteBuffer payload) throws InvalidProtocolBufferException {
+        if (typed(format)) {
+            PaymentPayload request = PaymentPayload.parseFrom(payload);
+            return new Payment(
+                    caller(request.getCredentials()),
+                    PayloadCodec.localDateTime(request.getDate()),
+                    PayloadCodec.amount(request.getAmount()),
+                    request.getDescription(),
+                    request.getRecipient()
+            );
+        }
+        JsonObject request = Utils.deserializeJson(payload);
+        return new Payment(
+                caller(request),
+                LocalDateTime.parse(request.getString("date")),
+                new BigDecimal(request.getString("amount")),
+                request.getString("description"),
+                request.getString("recipient")
+        );
+    }
+
+    public ByteString balance(PayloadCodec.Format format, BigDecimal balance) {
+        return typed(format)
+                ? BalancePayload.newBuilder().setBalance(PayloadCodec.amount(balance)).build().toByteString()
+                : ByteString.copyFrom(Utils.serializeJson(Utils.createJson(List.of("balance"), List.of(balance.toString()))));
+    }
+
+    public ByteString movements(PayloadCodec.Format format, List<MovementDto> movements) {
+        if (typed(format)) {
+            MovementsPayload.Builder response = MovementsPayload.newBuilder();
+            for (MovementDto movement : movements)
+                response.addMovements(movementPayload(movement));
+            return response.build().toByteString();
+        }
+        JsonArrayBuilder expenses = Json.createArrayBuilder();
+        for (MovementDto movement : movements)
+            expenses.add(movementJson(movement));
+        return ByteString.copyFrom(Utils.serializeJson(Json.createObjectBuilder().add("movements", expenses).build()));
+    }
+
+    public ByteString page(PayloadCodec.Format format, MovementPageDto page) {
+        return typed(format)
+                ? pagePayload(page).toByteString()
+                : ByteString.copyFrom(Utils.serializeJson(pageJson(page)));
+    }
+
+    private static Caller caller(Credentials credentials) {
+        return new Caller(
+                credentials.getUsername(),
+                credentials.getPassword().toByteArray(),
+                PayloadCodec.offsetDateTime(credentials.getTimestamp())
+        );
+    }
+
+    private Caller caller(JsonObject request) {
+        return new Caller(
+                request.getString("username"),
+                crypto.decryptPassword(request.getString("password")),
+                OffsetDateTime.parse(request.getString("timestampString"))
+        );
+    }
+
+    private static JsonObjectBuilder movementJson(MovementDto movement) {
+        return Json.createObjectBuilder()
+                .add("currency", movement.currency())
+                .add("date", movement.date().toString())
+                .add("value", movement.amount().toString())
+                .add("description", movement.description());
+    }
+
+    private static MovementPayload movementPayload(MovementDto movement) {
+        return MovementPayload.newBuilder()
+                .setCurrency(movement.currency())
+                .setDate(PayloadCodec.timestamp(movement.date()))
+                .setValue(PayloadCodec.amount(movement.amount()))
+                .setDescription(movement.description())
+                .build();
+    }
+
+    private static JsonObject pageJson(MovementPageDto page) {
+        JsonArrayBuilder movements = Json.createArrayBuilder();
+        for (MovementDto movement : page.movements())
+            movements.add(movementJson(movement));
+        JsonObjectBuilder pageBuilder = Json.createObjectBuilder()
+                .add("movements", movements)
+                .add("last", page.last());
+        if (page.cursor() != null) {
+            pageBuilder.add("cursor", Json.createObjectBuilder().add("movement", page.cursor().movement()));
+        }
+        return pageBuilder.build();
+    }
+
+    private static MovementPagePayload pagePayload(MovementPageDto page) {
+        MovementPagePayload.Builder pageBuilder = MovementPagePayload.newBuilder().setLast(page.last());
+        for (MovementDto movement : page.movements())
+            pageBuilder.addMovements(movementPayload(movement));
+        if (page.cursor() != null) {
+            pageBuilder.setCursor(MovementCursor.newBuilder().setMovement(page.cursor().movement()));
+        }
+        return pageBuilder.build();
+    }
+}
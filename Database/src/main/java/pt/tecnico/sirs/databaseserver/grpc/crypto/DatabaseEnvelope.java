@@ -0,0 +1,35 @@
+package pt.tecnico.sirs.databaseserver.grpc.crypto;
+
+import io.grpc.Context;
+import pt.tecnico.sirs.utils.exceptions.InvalidSessionException;
+
+import java.nio.ByteBuffer;
+
+// The session and opened payload of the call being served, filled in by DatabaseEnvelopeInterceptor
+public final class DatabaseEnvelope {
+    static final Context.Key<DatabaseEnvelope> KEY = Context.key("database-envelope");
+
+    private volatile DatabaseSession session;
+    private volatile ByteBuffer payload;
+
+    DatabaseEnvelope() {}
+
+    public static DatabaseEnvelope current() {
+        DatabaseEnvelope envelope = KEY.get();
+        if (envelope == null || envelope.session == null) throw new InvalidSessionException();
+        return envelope;
+    }
+
+    void open(DatabaseSession session, ByteBuffer payload) {
+        this.payload = payload;
+        this.session = session;
+    }
+
+    public DatabaseSession getSession() {
+        return session;
+    }
+
+    public ByteBuffer getPayload() {
+        return payload.duplicate();
+    }
+}
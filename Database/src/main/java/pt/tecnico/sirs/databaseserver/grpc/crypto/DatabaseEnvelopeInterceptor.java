@@ -0,0 +1,111 @@
+package pt.tecnico.sirs.databaseserver.grpc.crypto;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import io.grpc.*;
+import pt.tecnico.sirs.contract.databaseserver.DatabaseServiceGrpc;
+import pt.tecnico.sirs.telemetry.Metrics;
+import pt.tecnico.sirs.telemetry.Stage;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+// Opens every request envelope and seals every response envelope of the database service in one place, so handlers
+// only ever see plaintext payloads; the Needham-Schroeder handshake methods carry their own cryptography
+public final class DatabaseEnvelopeInterceptor implements ServerInterceptor {
+    // Every message of the contract is a single bytes field, request or response, holding the envelope
+    private static final int ENVELOPE_FIELD = 1;
+    private static final Set<String> HANDSHAKE = Set.of(
+            DatabaseServiceGrpc.getAuthenticateMethod().getFullMethodName(),
+            DatabaseServiceGrpc.getStillAliveMethod().getFullMethodName()
+    );
+    // Payment orders are signed whatever the session negotiated, so they can not be repudiated
+    private static final Set<String> SIGNED = Set.of(
+            DatabaseServiceGrpc.getOrderPaymentMethod().getFullMethodName()
+    );
+
+    private final DatabaseServerCryptographicManager crypto;
+    private final DatabaseSessionRegistry sessions;
+    private final Metrics metrics = Metrics.registry();
+    private final LongAdder rejected = new LongAdder();
+
+    public DatabaseEnvelopeInterceptor(DatabaseServerCryptographicManager crypto, DatabaseSessionRegistry sessions) {
+        this.crypto = crypto;
+        this.sessions = sessions;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        String method = call.getMethodDescriptor().getFullMethodName();
+        if (HANDSHAKE.contains(method)) return next.startCall(call, headers);
+
+        boolean signed = SIGNED.contains(method);
+        DatabaseEnvelope envelope = new DatabaseEnvelope();
+        ServerCall<ReqT, RespT> sealingCall = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void sendMessage(RespT message) {
+                super.sendMessage(seal(message, envelope, signed));
+            }
+        };
+
+        ServerCall.Listener<ReqT> listener = Contexts.interceptCall(
+                Context.current().withValue(DatabaseEnvelope.KEY, envelope), sealingCall, headers, next
+        );
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            private boolean closed;
+
+            @Override
+            public void onMessage(ReqT message) {
+                try {
+                    open(message, envelope, signed);
+                } catch (Exception e) {
+                    closed = true;
+                    rejected.increment();
+                    call.close(Status.ABORTED.withDescription(e.getMessage()), new Metadata());
+                    return;
+                }
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onHalfClose() {
+                if (!closed) super.onHalfClose();
+            }
+        };
+    }
+
+    private void open(Object message, DatabaseEnvelope envelope, boolean signed) throws Exception {
+        long start = Metrics.now();
+        Message request = (Message) message;
+        ByteBuffer bytes = ((ByteString) request.getField(field(request))).asReadOnlyByteBuffer();
+        DatabaseSession session = sessions.resolve(bytes);
+        envelope.open(session, crypto.open(bytes, session, signed));
+        metrics.record(Stage.OPEN, start);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <RespT> RespT seal(RespT message, DatabaseEnvelope envelope, boolean signed) {
+        long start = Metrics.now();
+        Message response = (Message) message;
+        FieldDescriptor field = field(response);
+        try {
+            byte[] cryptogram = crypto.seal(((ByteString) response.getField(field)).toByteArray(), envelope.getSession(), signed);
+            return (RespT) response.toBuilder().setField(field, ByteString.copyFrom(cryptogram)).build();
+        } catch (Exception e) {
+            throw Status.ABORTED.withDescription(e.getMessage()).withCause(e).asRuntimeException();
+        } finally {
+            metrics.record(Stage.SEAL, start);
+        }
+    }
+
+    private static FieldDescriptor field(Message message) {
+        return message.getDescriptorForType().findFieldByNumber(ENVELOPE_FIELD);
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
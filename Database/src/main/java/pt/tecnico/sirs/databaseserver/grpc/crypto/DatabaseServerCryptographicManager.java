@@ -1,21 +1,21 @@
 package pt.tecnico.sirs.databaseserver.grpc.crypto;
 
-import pt.tecnico.sirs.contract.databaseserver.DatabaseServer.*;
-
 import pt.tecnico.sirs.cryptology.Base;
+import pt.tecnico.sirs.cryptology.Security;
+import pt.tecnico.sirs.telemetry.Metrics;
+import pt.tecnico.sirs.telemetry.Stage;
 import pt.tecnico.sirs.utils.Utils;
 
+import java.nio.ByteBuffer;
+
 public class DatabaseServerCryptographicManager extends DatabaseServerCryptographicCore implements Base.KeyManager {
     private final int MOCK_HASH = 0;
+    private final Metrics metrics = Metrics.registry();
     public DatabaseServerCryptographicManager(
-            String ivPath,
-            String secretKeyPath,
             String publicKeyPath,
             String privateKeyPath
     ) {
         super();
-        this.addIvPath(MOCK_HASH, ivPath);
-        this.addSecretKeyPath(MOCK_HASH, secretKeyPath);
         this.addPublicKeyPath(MOCK_HASH, publicKeyPath);
         this.addPrivateKeyPath(MOCK_HASH, privateKeyPath);
     }
@@ -24,87 +24,33 @@ public class DatabaseServerCryptographicManager extends DatabaseServerCryptograp
         return Utils.hexToByte(password);
     }
 
-    public <P> P encrypt(P object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public <P> boolean check(P object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public <P> P decrypt(P object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public BalanceResponse encrypt(BalanceResponse object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public boolean check(BalanceRequest object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public BalanceRequest decrypt(BalanceRequest object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public CreateAccountResponse encrypt(CreateAccountResponse object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public boolean check(CreateAccountRequest object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public CreateAccountRequest decrypt(CreateAccountRequest object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public DeleteAccountResponse encrypt(DeleteAccountResponse object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public boolean check(DeleteAccountRequest object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public DeleteAccountRequest decrypt(DeleteAccountRequest object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public GetMovementsResponse encrypt(GetMovementsResponse object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public boolean check(GetMovementsRequest object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public GetMovementsRequest decrypt(GetMovementsRequest object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public AddExpenseResponse encrypt(AddExpenseResponse object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public boolean check(AddExpenseRequest object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
-
-    public AddExpenseRequest decrypt(AddExpenseRequest object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
-    }
+    // Signed overrides the session mode for requests that must not be repudiated
+    public ByteBuffer open(ByteBuffer envelope, DatabaseSession session, boolean signed) throws Exception {
+        ByteBuffer cryptogram = DatabaseSessionRegistry.payload(envelope);
+        long start = Metrics.now();
+        // Sealed envelopes are authenticated by the cipher itself, there is no signature to verify
+        if (mode(session, signed) == Security.Mode.SEALED) {
+            ByteBuffer message = unseal(cryptogram, session.getSessionKey());
+            metrics.record(Stage.DECRYPT, start);
+            return message;
+        }
+        ByteBuffer protectedDocument = decrypt(cryptogram, session.getSessionKey(), session.getIv());
+        metrics.record(Stage.DECRYPT, start);
 
-    public OrderPaymentResponse encrypt(OrderPaymentResponse object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+        start = Metrics.now();
+        ByteBuffer message = verify(protectedDocument, getPublicKey(MOCK_HASH));
+        metrics.record(Stage.VERIFY, start);
+        return message;
     }
 
-    public boolean check(OrderPaymentRequest object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public byte[] seal(byte[] message, DatabaseSession session, boolean signed) throws Exception {
+        long start = Metrics.now();
+        byte[] cryptogram = seal(message, mode(session, signed), session.getSessionKey(), getPrivateKey(MOCK_HASH), session.getIv());
+        metrics.record(Stage.ENCRYPT, start);
+        return cryptogram;
     }
 
-    public OrderPaymentRequest decrypt(OrderPaymentRequest object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    private static Security.Mode mode(DatabaseSession session, boolean signed) {
+        return signed ? Security.Mode.SIGNED : session.getMode();
     }
 }
@@ -0,0 +1,77 @@
+package pt.tecnico.sirs.databaseserver.grpc.crypto;
+
+import pt.tecnico.sirs.contract.payloads.PayloadCodec;
+import pt.tecnico.sirs.cryptology.Security;
+
+import javax.crypto.SecretKey;
+import java.util.UUID;
+
+public final class DatabaseSession {
+    private final UUID id;
+    private final SecretKey sessionKey;
+    private final byte[] iv;
+    private final Security.Mode mode;
+    private final PayloadCodec.Format format;
+    private final int nonce;
+    private final long expiresAt;
+    private volatile long lastSeen;
+    private volatile boolean established;
+
+    DatabaseSession(UUID id, SecretKey sessionKey, byte[] iv, Security.Mode mode, PayloadCodec.Format format, int nonce, long createdAt, long lifetime) {
+        this.id = id;
+        this.sessionKey = sessionKey;
+        this.iv = iv.clone();
+        this.mode = mode;
+        this.format = format;
+        this.nonce = nonce;
+        this.expiresAt = createdAt + lifetime;
+        this.lastSeen = createdAt;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public SecretKey getSessionKey() {
+        return sessionKey;
+    }
+
+    public byte[] getIv() {
+        return iv.clone();
+    }
+
+    public Security.Mode getMode() {
+        return mode;
+    }
+
+    public PayloadCodec.Format getFormat() {
+        return format;
+    }
+
+    public int getNonce() {
+        return nonce;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public boolean isEstablished() {
+        return established;
+    }
+
+    // Needham-Schroeder step 5, the client proves it holds the session key by answering nonce - 1
+    public boolean confirm(int response) {
+        if (nonce - response != 1) return false;
+        established = true;
+        return true;
+    }
+
+    void touch(long now) {
+        lastSeen = now;
+    }
+}
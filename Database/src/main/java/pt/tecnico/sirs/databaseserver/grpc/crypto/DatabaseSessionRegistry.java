@@ -0,0 +1,92 @@
+package pt.tecnico.sirs.databaseserver.grpc.crypto;
+
+import pt.tecnico.sirs.contract.payloads.PayloadCodec;
+import pt.tecnico.sirs.cryptology.Security;
+import pt.tecnico.sirs.utils.exceptions.InvalidSessionException;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Sessions established through Needham-Schroeder, addressed by the 16-byte session id every envelope starts with
+public final class DatabaseSessionRegistry implements AutoCloseable {
+    public static final int SESSION_ID_LENGTH = 16;
+
+    private final Map<UUID, DatabaseSession> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long lifetime;
+    private final long idleTimeout;
+    private final ScheduledExecutorService evictor;
+
+    public DatabaseSessionRegistry() {
+        this(Duration.ofHours(1), Duration.ofMinutes(15), Duration.ofSeconds(30));
+    }
+
+    public DatabaseSessionRegistry(Duration lifetime, Duration idleTimeout, Duration evictionPeriod) {
+        this.lifetime = lifetime.toMillis();
+        this.idleTimeout = idleTimeout.toMillis();
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleAtFixedRate(this::evict, evictionPeriod.toMillis(), evictionPeriod.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public DatabaseSession open(SecretKey sessionKey, byte[] iv, Security.Mode mode, PayloadCodec.Format format) {
+        DatabaseSession session = new DatabaseSession(
+                UUID.randomUUID(), sessionKey, iv, mode, format, random.nextInt(), System.currentTimeMillis(), lifetime
+        );
+        sessions.put(session.getId(), session);
+        return session;
+    }
+
+    // Any live session, including one still waiting for the Needham-Schroeder step 5 answer
+    public DatabaseSession lookup(ByteBuffer envelope) {
+        if (envelope.remaining() < SESSION_ID_LENGTH) throw new InvalidSessionException();
+        ByteBuffer id = envelope.duplicate();
+        DatabaseSession session = sessions.get(new UUID(id.getLong(), id.getLong()));
+
+        long now = System.currentTimeMillis();
+        if (session == null || expired(session, now)) throw new InvalidSessionException();
+        session.touch(now);
+        return session;
+    }
+
+    public DatabaseSession resolve(ByteBuffer envelope) {
+        DatabaseSession session = lookup(envelope);
+        if (!session.isEstablished()) throw new InvalidSessionException();
+        return session;
+    }
+
+    public static ByteBuffer payload(ByteBuffer envelope) {
+        ByteBuffer payload = envelope.duplicate();
+        return payload.position(payload.position() + SESSION_ID_LENGTH).slice();
+    }
+
+    private boolean expired(DatabaseSession session, long now) {
+        return now >= session.getExpiresAt() || now - session.getLastSeen() >= idleTimeout;
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> expired(session, now));
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        sessions.clear();
+    }
+}
@@ -1,54 +1,144 @@
 package pt.tecnico.sirs.databaseserver.repository;
 
-import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import pt.tecnico.sirs.databaseserver.dto.MovementCursorDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementPageDto;
 import pt.tecnico.sirs.databaseserver.grpc.DatabaseService;
+import pt.tecnico.sirs.databaseserver.repository.core.AccountLocks;
 import pt.tecnico.sirs.databaseserver.repository.core.DatabaseTransaction;
 import pt.tecnico.sirs.databaseserver.repository.core.HibernateUtil;
+import pt.tecnico.sirs.databaseserver.repository.exceptions.ConcurrentUpdateException;
+import pt.tecnico.sirs.databaseserver.repository.memory.InMemoryDatabaseState;
 import pt.tecnico.sirs.databaseserver.repository.service.DatabaseState;
+import pt.tecnico.sirs.telemetry.Metrics;
+import pt.tecnico.sirs.telemetry.Stage;
+import pt.tecnico.sirs.utils.ReplayWindow;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
-
-import javax.json.JsonArrayBuilder;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 
 public final class DatabaseManager implements DatabaseOperations {
-    private abstract static class SimpleDatabaseTransaction<ObjectiveType> extends DatabaseTransaction {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 10;
+
+    // Where accounts live: Postgres through Hibernate, or this JVM only
+    public enum Engine {
+        HIBERNATE, MEMORY;
+
+        public static Engine of(String name) {
+            return name == null || name.isBlank() ? HIBERNATE : valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    private abstract class SimpleDatabaseTransaction<ObjectiveType> extends DatabaseTransaction {
         ObjectiveType yield;
         final void setTransactionYield(ObjectiveType yieldValue) {this.yield = yieldValue; }
         @Override
         public abstract void doInTransaction();
+        // Runs again from scratch when it lost an optimistic lock, backing off exponentially with jitter; the
+        // in-memory engine keeps its own consistency and needs no Hibernate transaction around it
         final ObjectiveType yield() {
-            execute();
-            return yield;
+            long start = Metrics.now();
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    if (persistentState != null) execute();
+                    else doInTransaction();
+                    Metrics.registry().record(Stage.TRANSACTION, start);
+                    return yield;
+                } catch (ConcurrentUpdateException e) {
+                    if (attempt == MAX_ATTEMPTS) throw e;
+                    retries.increment();
+                    try {
+                        long backoff = BASE_BACKOFF_MILLIS << (attempt - 1);
+                        Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff));
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                }
+            }
         }
     }
+
+    private enum RequestType { CREATE_ACCOUNT, DELETE_ACCOUNT, BALANCE, GET_MOVEMENTS, STREAM_MOVEMENTS, ADD_EXPENSE, ORDER_PAYMENT }
     private final DatabaseService databaseService;
     private final DatabaseOperations databaseOperator;
-    private final Session session;
+    private final DatabaseState persistentState;
+    private final AccountLocks accountLocks;
+    private final LongAdder retries = new LongAdder();
+    private final Map<RequestType, ReplayWindow> timestamps = new EnumMap<>(RequestType.class);
 
-    public DatabaseManager(DatabaseService service) {
-        final SessionFactory sessionFactory = HibernateUtil.getSessionFactory();
-        this.session = sessionFactory.openSession();
+    public DatabaseManager(DatabaseService service, int poolSize, boolean rowLocks) {
+        this(service, Engine.HIBERNATE, poolSize, rowLocks);
+    }
+
+    public DatabaseManager(DatabaseService service, Engine engine, int poolSize, boolean rowLocks) {
         this.databaseService = service;
         databaseService.register();
-        this.databaseOperator = new DatabaseState.DatabaseManagerBuilder(sessionFactory).build();
+        if (engine == Engine.MEMORY) {
+            final InMemoryDatabaseState memoryState = new InMemoryDatabaseState.InMemoryDatabaseStateBuilder().build();
+            this.persistentState = null;
+            this.accountLocks = memoryState.getAccountLocks();
+            this.databaseOperator = memoryState;
+        } else {
+            final SessionFactory sessionFactory = HibernateUtil.buildSessionFactory(poolSize);
+            this.persistentState = new DatabaseState.DatabaseManagerBuilder(sessionFactory).rowLocks(rowLocks).build();
+            this.accountLocks = persistentState.getAccountLocks();
+            this.databaseOperator = persistentState;
+        }
+        for (RequestType type : RequestType.values())
+            timestamps.put(type, new ReplayWindow());
+    }
+
+    // Checked once per request, outside the transaction, so a retried transaction is not taken for a replay
+    private void beforeAll(RequestType type, OffsetDateTime timestamp) {
+        timestamps.get(type).accept(timestamp);
     }
 
     public DatabaseService getService() {
         return databaseService;
     }
 
+    public boolean isPersistent() {
+        return persistentState != null;
+    }
+
+    // In memory an account has a single balance, only ever updated under its account stripe
+    public void splitBalance(String username, int slots) {
+        if (!isPersistent()) return;
+        new SimpleDatabaseTransaction<Void>() {
+            @Override
+            public void doInTransaction() {
+                persistentState.splitBalance(username, slots);
+            }
+        }.yield();
+    }
+
+    public AccountLocks getAccountLocks() {
+        return accountLocks;
+    }
+
+    // Transactions run again after losing an update race
+    public long getRetries() {
+        return retries.sum();
+    }
+
     public void shutDown() {
         databaseService.delete();
-        session.close();
-        HibernateUtil.shutdown();
+        if (isPersistent()) HibernateUtil.shutdown();
     }
 
     @Override
     public void createAccount(List<String> usernames, byte[] password, BigDecimal initialDeposit, OffsetDateTime timestamp) {
+        beforeAll(RequestType.CREATE_ACCOUNT, timestamp);
         new SimpleDatabaseTransaction<Void>() {
             @Override
             public void doInTransaction() {
@@ -59,6 +149,7 @@ public final class DatabaseManager implements DatabaseOperations {
 
     @Override
     public void deleteAccount(String username, byte[] password, OffsetDateTime timestamp) {
+        beforeAll(RequestType.DELETE_ACCOUNT, timestamp);
         new SimpleDatabaseTransaction<Void>() {
             @Override
             public void doInTransaction() {
@@ -69,7 +160,12 @@ public final class DatabaseManager implements DatabaseOperations {
 
     @Override
     public BigDecimal balance(String username, byte[] password, OffsetDateTime timestamp) {
+        beforeAll(RequestType.BALANCE, timestamp);
         return new SimpleDatabaseTransaction<BigDecimal>() {
+            @Override
+            public boolean isReadOnly() {
+                return true;
+            }
             @Override
             public void doInTransaction() {
                 setTransactionYield(databaseOperator.balance(username, password, timestamp));
@@ -78,8 +174,13 @@ public final class DatabaseManager implements DatabaseOperations {
     }
 
     @Override
-    public JsonArrayBuilder getMovements(String username, byte[] password, OffsetDateTime timestamp) {
-        return new SimpleDatabaseTransaction<JsonArrayBuilder>() {
+    public List<MovementDto> getMovements(String username, byte[] password, OffsetDateTime timestamp) {
+        beforeAll(RequestType.GET_MOVEMENTS, timestamp);
+        return new SimpleDatabaseTransaction<List<MovementDto>>() {
+            @Override
+            public boolean isReadOnly() {
+                return true;
+            }
             @Override
             public void doInTransaction() {
                 setTransactionYield(databaseOperator.getMovements(username, password, timestamp));
@@ -87,8 +188,45 @@ public final class DatabaseManager implements DatabaseOperations {
         }.yield();
     }
 
+    // The caller is checked once; every page is then read in a short transaction of its own when it is asked for, so
+    // no connection is held while the client is slow to take pages
+    @Override
+    public Iterator<MovementPageDto> streamMovements(String username, byte[] password, LocalDateTime from, LocalDateTime to, int pageSize, MovementCursorDto cursor, OffsetDateTime timestamp) {
+        beforeAll(RequestType.STREAM_MOVEMENTS, timestamp);
+        final Iterator<MovementPageDto> pages = new SimpleDatabaseTransaction<Iterator<MovementPageDto>>() {
+            @Override
+            public boolean isReadOnly() {
+                return true;
+            }
+            @Override
+            public void doInTransaction() {
+                setTransactionYield(databaseOperator.streamMovements(username, password, from, to, pageSize, cursor, timestamp));
+            }
+        }.yield();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return pages.hasNext();
+            }
+            @Override
+            public MovementPageDto next() {
+                return new SimpleDatabaseTransaction<MovementPageDto>() {
+                    @Override
+                    public boolean isReadOnly() {
+                        return true;
+                    }
+                    @Override
+                    public void doInTransaction() {
+                        setTransactionYield(pages.next());
+                    }
+                }.yield();
+            }
+        };
+    }
+
     @Override
     public void addExpense(String username, byte[] password, LocalDateTime date, BigDecimal amount, String description, OffsetDateTime timestamp) {
+        beforeAll(RequestType.ADD_EXPENSE, timestamp);
         new SimpleDatabaseTransaction<Void>() {
             @Override
             public void doInTransaction() {
@@ -99,6 +237,7 @@ public final class DatabaseManager implements DatabaseOperations {
 
     @Override
     public void orderPayment(String username, byte[] password, LocalDateTime date, BigDecimal amount, String description, String recipient, OffsetDateTime timestamp) {
+        beforeAll(RequestType.ORDER_PAYMENT, timestamp);
         new SimpleDatabaseTransaction<Void>() {
             @Override
             public void doInTransaction() {
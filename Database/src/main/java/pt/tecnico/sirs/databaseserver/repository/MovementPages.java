@@ -0,0 +1,35 @@
+package pt.tecnico.sirs.databaseserver.repository;
+
+import pt.tecnico.sirs.databaseserver.dto.MovementCursorDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementPageDto;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+// Pages of one account's movements, each read only when asked for and starting at the cursor the previous one ended
+// on, so every page can be read in a transaction of its own
+public final class MovementPages implements Iterator<MovementPageDto> {
+    private final Function<MovementCursorDto, MovementPageDto> reader;
+    private MovementCursorDto cursor;
+    private boolean last;
+
+    public MovementPages(MovementCursorDto cursor, Function<MovementCursorDto, MovementPageDto> reader) {
+        this.cursor = cursor;
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !last;
+    }
+
+    @Override
+    public MovementPageDto next() {
+        if (last) throw new NoSuchElementException();
+        MovementPageDto page = reader.apply(cursor);
+        cursor = page.cursor();
+        last = page.last();
+        return page;
+    }
+}
@@ -0,0 +1,132 @@
+package pt.tecnico.sirs.databaseserver.repository.core;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import pt.tecnico.sirs.databaseserver.repository.exceptions.ConcurrentUpdateException;
+
+import javax.transaction.Synchronization;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Striped locks keyed by account number (or any other key with a stable hashCode), held until the current transaction completes
+public final class AccountLocks {
+    public static final int DEFAULT_STRIPES = 1024;
+    private static final long LOCK_TIMEOUT_MILLIS = 5000;
+
+    private final SessionFactory sessionFactory;
+    private final ReentrantLock[] stripes;
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    // Transfers holding their stripes right now, and the most there ever were at once
+    private final AtomicInteger held = new AtomicInteger();
+    private final AtomicInteger maxHeld = new AtomicInteger();
+
+    public AccountLocks(int stripes) {
+        this(null, stripes);
+    }
+
+    public AccountLocks(SessionFactory sessionFactory, int stripes) {
+        this.sessionFactory = sessionFactory;
+        this.stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+        for (int i = 0; i < this.stripes.length; i++)
+            this.stripes[i] = new ReentrantLock();
+    }
+
+    private int stripe(Object key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    // Holds both stripes until closed, for callers that own the critical section instead of a Hibernate transaction
+    @FunctionalInterface
+    public interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // Stripes are always taken in ascending order, so two transfers between the same accounts cannot deadlock
+    public Held lock(Object first, Object second) {
+        int low = Math.min(stripe(first), stripe(second));
+        int high = Math.max(stripe(first), stripe(second));
+
+        acquire(stripes[low]);
+        if (high != low) {
+            try {
+                acquire(stripes[high]);
+            } catch (RuntimeException e) {
+                stripes[low].unlock();
+                throw e;
+            }
+        }
+
+        maxHeld.accumulateAndGet(held.incrementAndGet(), Math::max);
+        return () -> {
+            held.decrementAndGet();
+            if (high != low) stripes[high].unlock();
+            stripes[low].unlock();
+        };
+    }
+
+    public void lockUntilCompletion(Object first, Object second) {
+        Held held = lock(first, second);
+        try {
+            Transaction transaction = sessionFactory.getCurrentSession().getTransaction();
+            transaction.registerSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {}
+
+                @Override
+                public void afterCompletion(int status) {
+                    held.close();
+                }
+            });
+        } catch (RuntimeException e) {
+            held.close();
+            throw e;
+        }
+    }
+
+    private void acquire(ReentrantLock lock) {
+        acquisitions.increment();
+        if (lock.tryLock()) return;
+
+        contended.increment();
+        long start = System.nanoTime();
+        try {
+            if (!lock.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+                throw new ConcurrentUpdateException(new IllegalStateException("Timed out waiting for an account lock"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrentUpdateException(e);
+        } finally {
+            long waited = System.nanoTime() - start;
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long getContended() {
+        return contended.sum();
+    }
+
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public int getMaxHeld() {
+        return maxHeld.get();
+    }
+}
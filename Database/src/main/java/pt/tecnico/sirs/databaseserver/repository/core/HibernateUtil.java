@@ -1,15 +1,40 @@
 package pt.tecnico.sirs.databaseserver.repository.core;
 
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.grpc.Context;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
 import org.hibernate.Transaction;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.CacheRegionStatistics;
+import pt.tecnico.sirs.databaseserver.repository.exceptions.ConcurrentUpdateException;
+import pt.tecnico.sirs.telemetry.Metrics;
+import pt.tecnico.sirs.telemetry.Tracing;
+
+import javax.persistence.OptimisticLockException;
+
+import java.util.List;
 
 public final class HibernateUtil {
-    private static SessionFactory sessionFactory = buildSessionFactory();
-    private static SessionFactory buildSessionFactory() {
+    public static final int DEFAULT_POOL_SIZE = 16;
+    public static final String HOLDERS_BY_ACCOUNT_REGION = "bank-account-holders-by-account";
+    public static final List<String> CACHE_REGIONS = List.of(
+            "bank-account", "bank-account-number", "bank-account-holder", "bank-account-holder-name", HOLDERS_BY_ACCOUNT_REGION
+    );
+    private static SessionFactory sessionFactory;
+
+    public static synchronized SessionFactory buildSessionFactory(int poolSize) {
         try {
             if (sessionFactory == null) {
-                sessionFactory = new Configuration().configure("hibernate.cfg.xml").buildSessionFactory();
+                sessionFactory = new Configuration().configure("hibernate.cfg.xml")
+                        .setProperty("hibernate.hikari.maximumPoolSize", String.valueOf(poolSize))
+                        .setProperty("hibernate.hikari.minimumIdle", String.valueOf(poolSize))
+                        .buildSessionFactory();
             }
             return sessionFactory;
         } catch (Throwable ex) {
@@ -17,25 +42,71 @@ public final class HibernateUtil {
         }
     }
 
-    public static SessionFactory getSessionFactory() {
-        return sessionFactory;
+    public static synchronized SessionFactory getSessionFactory() {
+        return sessionFactory == null ? buildSessionFactory(DEFAULT_POOL_SIZE) : sessionFactory;
+    }
+
+    public static HikariPoolMXBean getPoolStatistics() {
+        return getSessionFactory().unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class)
+                .unwrap(HikariDataSource.class)
+                .getHikariPoolMXBean();
+    }
+
+    public static CacheRegionStatistics getCacheStatistics(String region) {
+        return HOLDERS_BY_ACCOUNT_REGION.equals(region)
+                ? getSessionFactory().getStatistics().getQueryRegionStatistics(region)
+                : getSessionFactory().getStatistics().getDomainDataRegionStatistics(region);
+    }
+
+    public static double getCacheHitRatio(String region) {
+        CacheRegionStatistics statistics = getCacheStatistics(region);
+        long lookups = statistics.getHitCount() + statistics.getMissCount();
+        return lookups == 0 ? 0 : (double) statistics.getHitCount() / lookups;
     }
 
     public static void shutdown() {
         getSessionFactory().close();
     }
 
+    private static boolean isConflict(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause())
+            if (cause instanceof StaleStateException || cause instanceof OptimisticLockException) return true;
+        return false;
+    }
+
+    // One session per request: opened here, bound to the caller's gRPC context for the DAOs and closed on return
     static void inTransaction(TransactionCallback transactionCallback) {
-        Transaction transaction = HibernateUtil.getSessionFactory().getCurrentSession().getTransaction();
-        if (!HibernateUtil.getSessionFactory().getCurrentSession().getTransaction().isActive()) {
-            transaction.begin();
+        if (RequestSessionContext.hasBind()) {
+            transactionCallback.doInTransaction();
+            return;
+        }
+        if (Context.current().isCancelled()) throw new IllegalStateException("Request cancelled before reaching the database");
+
+        try (Session session = getSessionFactory().openSession()) {
+            Context previous = RequestSessionContext.bind(session);
             try {
-                transactionCallback.doInTransaction();
-                transaction.commit();
-            } catch (Exception e) {
-                transaction.rollback();
-                throw e;
+                // Read-only transactions skip dirty checking and flushes, and let Postgres skip the write bookkeeping
+                if (transactionCallback.isReadOnly()) {
+                    session.setDefaultReadOnly(true);
+                    session.setHibernateFlushMode(FlushMode.MANUAL);
+                    session.doWork(connection -> connection.setReadOnly(true));
+                }
+                Transaction transaction = session.beginTransaction();
+                try {
+                    transactionCallback.doInTransaction();
+                    long commit = Metrics.now();
+                    transaction.commit();
+                    Tracing.tracer().record("commit", commit);
+                } catch (Exception e) {
+                    if (transaction.isActive()) transaction.rollback();
+                    if (isConflict(e)) throw new ConcurrentUpdateException(e);
+                    throw e;
+                }
+            } finally {
+                RequestSessionContext.unbind(previous);
             }
-        } else transactionCallback.doInTransaction();
+        }
     }
-}
\ No newline at end of file
+}
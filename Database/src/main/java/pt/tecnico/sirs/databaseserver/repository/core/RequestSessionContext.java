@@ -0,0 +1,37 @@
+package pt.tecnico.sirs.databaseserver.repository.core;
+
+import io.grpc.Context;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.context.spi.AbstractCurrentSessionContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+// getCurrentSession() resolves to the session bound to the request's gRPC context rather than to the executor thread
+public final class RequestSessionContext extends AbstractCurrentSessionContext {
+    private static final Context.Key<Session> SESSION = Context.key("hibernate-session");
+
+    public RequestSessionContext(SessionFactoryImplementor factory) {
+        super(factory);
+    }
+
+    static boolean hasBind() {
+        Session session = SESSION.get();
+        return session != null && session.isOpen();
+    }
+
+    static Context bind(Session session) {
+        return Context.current().withValue(SESSION, session).attach();
+    }
+
+    static void unbind(Context previous) {
+        Context.current().detach(previous);
+    }
+
+    @Override
+    public Session currentSession() throws HibernateException {
+        Session session = SESSION.get();
+        if (session == null || !session.isOpen()) throw new HibernateException("No session bound to the current request");
+        validateExistingSession(session);
+        return session;
+    }
+}
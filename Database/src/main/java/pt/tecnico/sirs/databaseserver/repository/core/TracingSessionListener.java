@@ -0,0 +1,44 @@
+package pt.tecnico.sirs.databaseserver.repository.core;
+
+import org.hibernate.BaseSessionEventListener;
+import pt.tecnico.sirs.telemetry.Metrics;
+import pt.tecnico.sirs.telemetry.Tracing;
+
+// Created by Hibernate for every session; sessions are confined to the request thread, so the current span is the
+// call that issued each statement
+public class TracingSessionListener extends BaseSessionEventListener {
+    private final Tracing tracing = Tracing.tracer();
+    private long statementStart;
+    private long batchStart;
+    private long flushStart;
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementStart = Metrics.now();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        tracing.record("query", statementStart);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        batchStart = Metrics.now();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        tracing.record("batch", batchStart);
+    }
+
+    @Override
+    public void flushStart() {
+        flushStart = Metrics.now();
+    }
+
+    @Override
+    public void flushEnd(int numberOfEntities, int numberOfCollections) {
+        tracing.record("flush", flushStart);
+    }
+}
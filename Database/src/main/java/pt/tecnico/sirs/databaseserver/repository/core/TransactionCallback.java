@@ -2,4 +2,5 @@ package pt.tecnico.sirs.databaseserver.repository.core;
 
 interface TransactionCallback {
     void doInTransaction();
+    default boolean isReadOnly() { return false; }
 }
@@ -0,0 +1,8 @@
+package pt.tecnico.sirs.databaseserver.repository.exceptions;
+
+// Another transaction updated the same rows first; the whole transaction can safely be run again
+public class ConcurrentUpdateException extends RuntimeException {
+    public ConcurrentUpdateException(Throwable cause) {
+        super("Concurrent update, please retry", cause);
+    }
+}
@@ -0,0 +1,196 @@
+package pt.tecnico.sirs.databaseserver.repository.memory;
+
+import pt.tecnico.sirs.databaseserver.dto.MovementCursorDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementPageDto;
+import pt.tecnico.sirs.databaseserver.repository.DatabaseOperations;
+import pt.tecnico.sirs.databaseserver.repository.MovementPages;
+import pt.tecnico.sirs.databaseserver.repository.core.AccountLocks;
+import pt.tecnico.sirs.databaseserver.repository.exceptions.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Same operations and invariants as DatabaseState, kept in this JVM and lost on shutdown: holders map straight to
+// their account, each account appends its own movements, and transfers take the account stripes of AccountLocks
+public class InMemoryDatabaseState implements DatabaseOperations {
+    public static final class InMemoryDatabaseStateBuilder {
+        private int lockStripes = AccountLocks.DEFAULT_STRIPES;
+
+        public InMemoryDatabaseStateBuilder lockStripes(int lockStripes) {
+            this.lockStripes = lockStripes;
+            return this;
+        }
+
+        public InMemoryDatabaseState build() {
+            return new InMemoryDatabaseState(this);
+        }
+    }
+
+    private static final String CURRENCY = "EUR";
+    private static final Comparator<MovementDto> BY_DATE_AND_REF = Comparator
+            .comparing(MovementDto::date)
+            .thenComparing(MovementDto::movementRef);
+
+    // Appends are serialized per account; readers take the published length and array without locking
+    private static final class MovementLog {
+        private volatile MovementDto[] movements = new MovementDto[8];
+        private volatile int size;
+
+        synchronized void append(MovementDto movement) {
+            if (size == movements.length) movements = Arrays.copyOf(movements, size << 1);
+            movements[size] = movement;
+            size = size + 1;
+        }
+
+        List<MovementDto> snapshot() {
+            int length = size;
+            return Arrays.asList(Arrays.copyOf(movements, length));
+        }
+    }
+
+    private record PaymentKey(UUID accountTo, BigDecimal amount, String description) {}
+
+    // Movements are kept as the account sees them: outgoing ones negated, as DatabaseState returns them. The payments
+    // it ordered, with the holders that approved each so far, are only touched under the account's stripe
+    private static final class Account {
+        private final UUID number = UUID.randomUUID();
+        private final byte[] password;
+        private final Set<String> holders;
+        private final MovementLog movements = new MovementLog();
+        private final Map<PaymentKey, Set<String>> pendingPayments = new HashMap<>();
+        private volatile BigDecimal balance;
+        private volatile boolean closed;
+
+        Account(Set<String> holders, byte[] password, BigDecimal balance) {
+            this.holders = holders;
+            this.password = password;
+            this.balance = balance;
+        }
+    }
+
+    private final Map<String, Account> holders = new ConcurrentHashMap<>();
+    private final AccountLocks accountLocks;
+
+    private InMemoryDatabaseState(InMemoryDatabaseStateBuilder builder) {
+        this.accountLocks = new AccountLocks(builder.lockStripes);
+    }
+
+    public AccountLocks getAccountLocks() {
+        return accountLocks;
+    }
+
+    private Account authorize(String username, byte[] password) {
+        Account account = holders.get(username);
+        if (account == null) throw new NoSuchAccountHolderException();
+        if (account.closed) throw new NoSuchAccountException();
+        if (!Arrays.equals(account.password, password)) throw new WrongPasswordException();
+        return account;
+    }
+
+    @Override
+    public void createAccount(List<String> usernames, byte[] password, BigDecimal initialDeposit, OffsetDateTime timestamp) {
+        Account account = new Account(Set.copyOf(usernames), password.clone(), initialDeposit);
+        List<String> claimed = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            if (holders.putIfAbsent(username, account) != null) {
+                claimed.forEach(name -> holders.remove(name, account));
+                throw new BadHolderException();
+            }
+            claimed.add(username);
+        }
+    }
+
+    @Override
+    public void deleteAccount(String username, byte[] password, OffsetDateTime timestamp) {
+        Account account = authorize(username, password);
+        try (AccountLocks.Held ignored = accountLocks.lock(account.number, account.number)) {
+            account.closed = true;
+            account.pendingPayments.clear();
+        }
+        account.holders.forEach(name -> holders.remove(name, account));
+
+        // Payments other accounts ordered into this one can no longer be carried out, and none are added once closed
+        for (Account payer : new HashSet<>(holders.values())) {
+            try (AccountLocks.Held ignored = accountLocks.lock(payer.number, account.number)) {
+                payer.pendingPayments.keySet().removeIf(key -> key.accountTo().equals(account.number));
+            }
+        }
+    }
+
+    @Override
+    public BigDecimal balance(String username, byte[] password, OffsetDateTime timestamp) {
+        return authorize(username, password).balance;
+    }
+
+    @Override
+    public List<MovementDto> getMovements(String username, byte[] password, OffsetDateTime timestamp) {
+        List<MovementDto> movements = new ArrayList<>(authorize(username, password).movements.snapshot());
+        movements.sort(BY_DATE_AND_REF);
+        return movements;
+    }
+
+    // Pages the same way as DatabaseState, in the order the account recorded its movements, over one snapshot taken
+    // when the stream starts; a movement's sequence number is its position in the account's log
+    @Override
+    public Iterator<MovementPageDto> streamMovements(String username, byte[] password, LocalDateTime from, LocalDateTime to, int pageSize, MovementCursorDto cursor, OffsetDateTime timestamp) {
+        List<MovementDto> movements = authorize(username, password).movements.snapshot();
+
+        return new MovementPages(cursor, after -> {
+            List<MovementDto> page = new ArrayList<>(pageSize);
+            int start = after == null ? 0 : (int) Math.max(0, Math.min(after.movement(), movements.size()));
+            for (int position = start; position < movements.size() && page.size() < pageSize; position++) {
+                MovementDto movement = movements.get(position);
+                if (from != null && movement.date().isBefore(from)) continue;
+                if (to != null && !movement.date().isBefore(to)) continue;
+                page.add(movement);
+                after = new MovementCursorDto(position + 1);
+            }
+            return new MovementPageDto(List.copyOf(page), page.size() < pageSize, after);
+        });
+    }
+
+    @Override
+    public void addExpense(String username, byte[] password, LocalDateTime date, BigDecimal amount, String description, OffsetDateTime timestamp) {
+        Account account = authorize(username, password);
+        account.movements.append(new MovementDto(UUID.randomUUID(), account.number, date, amount.negate(), description, CURRENCY));
+    }
+
+    @Override
+    public void orderPayment(String username, byte[] password, LocalDateTime date, BigDecimal amount, String description, String recipient, OffsetDateTime timestamp) {
+        Account account = authorize(username, password);
+        if (amount.compareTo(BigDecimal.ZERO) < 0) throw new IllegalPaymentOrderBalance();
+        if (amount.compareTo(account.balance) > 0) throw new NotEnoughBalanceException();
+        Account recipientAccount = holders.get(recipient);
+        if (recipientAccount == null) throw new NoSuchAccountHolderException();
+
+        // The approval and the transfer it completes happen under the same stripes: a transfer that fails leaves the
+        // approvals as they were, the way a rolled back transaction leaves the Approval rows
+        PaymentKey key = new PaymentKey(recipientAccount.number, amount.stripTrailingZeros(), description);
+        try (AccountLocks.Held ignored = accountLocks.lock(account.number, recipientAccount.number)) {
+            if (account.closed || recipientAccount.closed) throw new NoSuchAccountException();
+            Set<String> approved = new HashSet<>(account.pendingPayments.getOrDefault(key, Set.of()));
+            approved.add(username);
+            if (!approved.containsAll(account.holders)) {
+                account.pendingPayments.put(key, approved);
+                return;
+            }
+            transfer(account, recipientAccount, date, amount, description);
+            account.pendingPayments.remove(key);
+        }
+    }
+
+    // Callers hold the stripes of both accounts
+    private void transfer(Account from, Account to, LocalDateTime date, BigDecimal amount, String description) {
+        if (amount.compareTo(from.balance) > 0) throw new NotEnoughBalanceException();
+        from.balance = from.balance.subtract(amount);
+        to.balance = to.balance.add(amount);
+
+        UUID movementRef = UUID.randomUUID();
+        from.movements.append(new MovementDto(movementRef, from.number, date, amount.negate(), description, CURRENCY));
+        to.movements.append(new MovementDto(movementRef, to.number, date, amount, description, CURRENCY));
+    }
+}
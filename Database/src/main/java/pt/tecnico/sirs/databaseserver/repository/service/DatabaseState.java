@@ -1,34 +1,58 @@
 package pt.tecnico.sirs.databaseserver.repository.service;
 
 import org.hibernate.SessionFactory;
+import pt.tecnico.sirs.databaseserver.dto.AccountContextDto;
 import pt.tecnico.sirs.databaseserver.dto.BankAccountDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementCursorDto;
 import pt.tecnico.sirs.databaseserver.dto.MovementDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementPageDto;
 import pt.tecnico.sirs.databaseserver.dto.PaymentDto;
 import pt.tecnico.sirs.databaseserver.repository.DatabaseOperations;
+import pt.tecnico.sirs.databaseserver.repository.MovementPages;
+import pt.tecnico.sirs.databaseserver.repository.core.AccountLocks;
 import pt.tecnico.sirs.databaseserver.repository.exceptions.WrongPasswordException;
 import pt.tecnico.sirs.databaseserver.repository.service.engine.*;
 import pt.tecnico.sirs.databaseserver.repository.service.engine.impl.*;
-import pt.tecnico.sirs.utils.exceptions.ReplayAttackException;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.util.*;
 
-import javax.json.Json;
-import javax.json.JsonArrayBuilder;
-
 public class DatabaseState implements DatabaseOperations {
     public static final class DatabaseManagerBuilder {
-        private final BankAccountService bankAccountService;
-        private final MovementService movementService;
-        private final PaymentService paymentService;
+        private final SessionFactory databaseSession;
+        private int lockStripes = AccountLocks.DEFAULT_STRIPES;
+        private boolean rowLocks;
+        private BankAccountService bankAccountService;
+        private MovementService movementService;
+        private PaymentService paymentService;
+        private AccountLocks accountLocks;
         public DatabaseManagerBuilder(SessionFactory databaseSession) {
+            this.databaseSession = databaseSession;
+        }
+
+        public DatabaseManagerBuilder lockStripes(int lockStripes) {
+            this.lockStripes = lockStripes;
+            return this;
+        }
+
+        // Also take SELECT ... FOR UPDATE row locks on both accounts of a transfer
+        public DatabaseManagerBuilder rowLocks(boolean rowLocks) {
+            this.rowLocks = rowLocks;
+            return this;
+        }
+
+        public DatabaseState build() {
             final ApprovalService approvalService = new ApprovalService(new ApprovalDAO(databaseSession));
             final BankAccountHolderService holderService = new BankAccountHolderService(new BankAccountHolderDAO(databaseSession));
+            this.accountLocks = new AccountLocks(databaseSession, lockStripes);
             this.bankAccountService = new BankAccountService(
                     new BankAccountDAO(databaseSession),
-                    holderService
+                    new BalanceSlotDAO(databaseSession),
+                    holderService,
+                    accountLocks,
+                    rowLocks
             );
             this.movementService = new MovementService(
                     new MovementDAO(databaseSession),
@@ -41,96 +65,75 @@ public class DatabaseState implements DatabaseOperations {
                     holderService,
                     bankAccountService
             );
-        }
-
-        public DatabaseState build() {
             return new DatabaseState(this);
         }
 
     }
 
-    private enum RequestType { CREATE_ACCOUNT, DELETE_ACCOUNT, BALANCE, GET_MOVEMENTS, ADD_EXPENSE, ORDER_PAYMENT }
     private final BankAccountService bankAccountService;
     private final MovementService movementService;
     private final PaymentService paymentService;
-    private final Map<RequestType, Set<OffsetDateTime>> timestamps = new HashMap<>();
+    private final AccountLocks accountLocks;
 
     private DatabaseState(DatabaseManagerBuilder builder) {
         this.bankAccountService = builder.bankAccountService;
         this.movementService = builder.movementService;
         this.paymentService = builder.paymentService;
-        for (RequestType type : RequestType.values())
-            timestamps.put(type, new HashSet<>());
-    }
-
-    private Set<OffsetDateTime> getTimestamps(RequestType type) {
-        return this.timestamps.get(type);
+        this.accountLocks = builder.accountLocks;
     }
 
-    private void addTimestamp(RequestType type, OffsetDateTime timestamp) {
-        this.timestamps.get(type).add(timestamp);
+    public AccountLocks getAccountLocks() {
+        return accountLocks;
     }
 
-    private boolean oldTimestampString(RequestType type, OffsetDateTime timestamp) {
-        return getTimestamps(type).contains(timestamp);
+    public void splitBalance(String username, int slots) {
+        bankAccountService.splitBalance(username, slots);
     }
 
-    private void beforeAll(RequestType type, OffsetDateTime timestamp) {
-        if (oldTimestampString(type, timestamp)) throw new ReplayAttackException();
-        addTimestamp(type, timestamp);
+    private AccountContextDto authorize(String username, byte[] password) {
+        AccountContextDto context = bankAccountService.resolve(username);
+        if (bankAccountService.passwordCheck(context, password)) throw new WrongPasswordException();
+        return context;
     }
 
     @Override
     public void createAccount(List<String> usernames, byte[] password, BigDecimal initialDeposit, OffsetDateTime timestamp) {
-        beforeAll(RequestType.CREATE_ACCOUNT, timestamp);
         BankAccountDto ignore = bankAccountService.createAccount(usernames, password, initialDeposit);
     }
 
     @Override
     public void deleteAccount(String username, byte[] password, OffsetDateTime timestamp) {
-        beforeAll(RequestType.DELETE_ACCOUNT, timestamp);
-        if (bankAccountService.passwordCheck(username, password)) throw new WrongPasswordException();
-        bankAccountService.deleteAccount(username);
+        bankAccountService.deleteAccount(authorize(username, password));
     }
 
     @Override
     public BigDecimal balance(String username, byte[] password, OffsetDateTime timestamp) {
-        beforeAll(RequestType.BALANCE, timestamp);
-        if (bankAccountService.passwordCheck(username, password)) throw new WrongPasswordException();
-        return bankAccountService.getBalance(username);
+        return bankAccountService.getBalance(authorize(username, password));
     }
 
     @Override
-    public JsonArrayBuilder getMovements(String username, byte[] password, OffsetDateTime timestamp) {
-        beforeAll(RequestType.GET_MOVEMENTS, timestamp);
-        if (bankAccountService.passwordCheck(username, password)) throw new WrongPasswordException();
-        JsonArrayBuilder arrayBuilder = Json.createArrayBuilder();
-
-        for (MovementDto movementDto : movementService.getAccountMovements(username)) {
-            arrayBuilder.add(
-                    Json.createObjectBuilder()
-                    .add("currency", movementDto.currency())
-                    .add("date", movementDto.date().toString())
-                    .add("value", movementDto.amount().toString())
-                    .add("description", movementDto.description())
-            );
-        }
+    public List<MovementDto> getMovements(String username, byte[] password, OffsetDateTime timestamp) {
+        AccountContextDto context = authorize(username, password);
+        List<MovementDto> movements = new ArrayList<>();
+        movementService.forEachAccountMovement(context, movements::add);
+        return movements;
+    }
 
-        return arrayBuilder;
+    // Reads one page each time the next is asked for; each page carries the keyset cursor the client can resume from
+    @Override
+    public Iterator<MovementPageDto> streamMovements(String username, byte[] password, LocalDateTime from, LocalDateTime to, int pageSize, MovementCursorDto cursor, OffsetDateTime timestamp) {
+        AccountContextDto context = authorize(username, password);
+        return new MovementPages(cursor, after -> movementService.getAccountMovementsPage(context, from, to, after, pageSize));
     }
 
     @Override
     public void addExpense(String username, byte[] password, LocalDateTime date, BigDecimal amount, String description, OffsetDateTime timestamp) {
-        beforeAll(RequestType.ADD_EXPENSE, timestamp);
-        if (bankAccountService.passwordCheck(username, password)) throw new WrongPasswordException();
-        MovementDto ignored = movementService.addMovement(username, date, amount, description);
+        MovementDto ignored = movementService.addMovement(authorize(username, password), date, amount, description);
     }
 
     @Override
     public void orderPayment(String username, byte[] password, LocalDateTime date, BigDecimal amount, String description, String recipient, OffsetDateTime timestamp) {
-        beforeAll(RequestType.ORDER_PAYMENT, timestamp);
-        if (bankAccountService.passwordCheck(username, password)) throw new WrongPasswordException();
-        PaymentDto ignored = paymentService.orderPayment(username, date, amount, description, recipient);
+        PaymentDto ignored = paymentService.orderPayment(authorize(username, password), date, amount, description, recipient);
     }
     
 }
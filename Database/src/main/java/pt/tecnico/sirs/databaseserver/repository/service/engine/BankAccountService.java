@@ -1,37 +1,62 @@
 package pt.tecnico.sirs.databaseserver.repository.service.engine;
 
+import pt.tecnico.sirs.databaseserver.domain.BalanceSlot;
 import pt.tecnico.sirs.databaseserver.domain.BankAccount;
+import pt.tecnico.sirs.databaseserver.dto.AccountContextDto;
 import pt.tecnico.sirs.databaseserver.dto.BankAccountDto;
 import pt.tecnico.sirs.databaseserver.dto.HolderDto;
+import pt.tecnico.sirs.databaseserver.repository.core.AccountLocks;
 import pt.tecnico.sirs.databaseserver.repository.exceptions.BadHolderException;
 import pt.tecnico.sirs.databaseserver.repository.exceptions.NoSuchAccountException;
 import pt.tecnico.sirs.databaseserver.repository.exceptions.NoSuchAccountHolderException;
 import pt.tecnico.sirs.databaseserver.repository.exceptions.NotEnoughBalanceException;
+import pt.tecnico.sirs.databaseserver.repository.service.engine.impl.BalanceSlotDAO;
 import pt.tecnico.sirs.databaseserver.repository.service.engine.impl.BankAccountDAO;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class BankAccountService {
+    private record SlotKey(UUID account, int slot) {}
+
     private final BankAccountDAO bankAccountDAO;
+    private final BalanceSlotDAO balanceSlotDAO;
     private final BankAccountHolderService bankAccountHolderService;
+    private final AccountLocks accountLocks;
+    private final boolean rowLocks;
 
-    public BankAccountService(BankAccountDAO bankAccountDAO, BankAccountHolderService bankAccountHolderService) {
+    public BankAccountService(BankAccountDAO bankAccountDAO, BalanceSlotDAO balanceSlotDAO, BankAccountHolderService bankAccountHolderService, AccountLocks accountLocks, boolean rowLocks) {
         this.bankAccountDAO = bankAccountDAO;
+        this.balanceSlotDAO = balanceSlotDAO;
         this.bankAccountHolderService = bankAccountHolderService;
+        this.accountLocks = accountLocks;
+        this.rowLocks = rowLocks;
     }
     
-    private static BankAccountDto toDto(BankAccount a) {
+    private BankAccountDto toDto(BankAccount a) {
         return new BankAccountDto(
                 a.getNumber(), 
                 a.getPassword(),
-                a.getBalance(),
+                totalBalance(a),
                 a.getCurrency()
         );
     }
 
+    // The account row holds debits (and may go negative), the slots hold credits
+    private BigDecimal totalBalance(BankAccount a) {
+        return a.isSplit() ? a.getBalance().add(balanceSlotDAO.sumByAccount(a.getNumber())) : a.getBalance();
+    }
+
     public Optional<BankAccountDto> getByHolder(String username) {
-        return bankAccountDAO.findByNumber(bankAccountHolderService.getHolderByName(username).orElseThrow(NoSuchAccountHolderException::new).accountNumber()).map(BankAccountService::toDto);
+        return bankAccountDAO.findByNumber(bankAccountHolderService.getHolderByName(username).orElseThrow(NoSuchAccountHolderException::new).accountNumber()).map(this::toDto);
+    }
+
+    // One holder and one account lookup, carrying the password hash and balance for the rest of the request
+    public AccountContextDto resolve(String username) {
+        HolderDto holder = bankAccountHolderService.getHolderByName(username).orElseThrow(NoSuchAccountHolderException::new);
+        BankAccountDto account = bankAccountDAO.findByNumber(holder.accountNumber()).map(this::toDto).orElseThrow(NoSuchAccountException::new);
+        return new AccountContextDto(holder, account);
     }
 
     public BankAccountDto createAccount(List<String> holders, byte[] passwords, BigDecimal initialDeposit) {
@@ -46,34 +71,56 @@ public class BankAccountService {
         return toDto(account);
     }
 
-    public void deleteAccount(String username) {
-        UUID accountNumber = bankAccountHolderService.getHolderByName(username).orElseThrow(NoSuchAccountHolderException::new).accountNumber();
+    public void deleteAccount(AccountContextDto context) {
+        UUID accountNumber = context.account().number();
         bankAccountHolderService.deleteHolderByAccountNumber(accountNumber);
+        balanceSlotDAO.findByAccount(accountNumber).forEach(balanceSlotDAO::delete);
         bankAccountDAO.delete(bankAccountDAO.findByNumber(accountNumber).orElseThrow(NoSuchAccountException::new));
     }
 
-    public boolean passwordCheck(String username, byte[] password) {
-        return !Arrays.equals(
-                bankAccountDAO.findByNumber(
-                        bankAccountHolderService.getHolderByName(username).orElseThrow(NoSuchAccountHolderException::new).accountNumber()
-                ).orElseThrow(NoSuchAccountException::new).getPassword(),
-                password
-        );
+    public boolean passwordCheck(AccountContextDto context, byte[] password) {
+        return !Arrays.equals(context.account().password(), password);
     }
 
-    public BigDecimal getBalance(String username) {
-        return bankAccountDAO.findByNumber(
+    public BigDecimal getBalance(AccountContextDto context) {
+        return context.account().balance();
+    }
+
+    // Opt-in for high fan-in recipients: credits are spread over the given number of slots
+    public void splitBalance(String username, int slots) {
+        BankAccount account = bankAccountDAO.findByNumber(
                 bankAccountHolderService.getHolderByName(username).orElseThrow(NoSuchAccountHolderException::new).accountNumber()
-        ).orElseThrow(NoSuchAccountException::new).getBalance();
+        ).orElseThrow(NoSuchAccountException::new);
+        for (int slot = account.getBalanceSlots(); slot < slots; slot++) {
+            BalanceSlot balanceSlot = new BalanceSlot(account.getNumber(), slot);
+            balanceSlot.setId(balanceSlotDAO.save(balanceSlot));
+        }
+        if (slots > account.getBalanceSlots()) account.split(slots);
     }
 
+    // Transfers on the same accounts run one at a time; balances are re-read under the lock before the check.
+    // A split recipient is only locked on the slot being credited, so payments into it do not queue on one row
     public void move(UUID accountFrom, UUID accountTo, BigDecimal amount) {
-        BankAccount bankAccountFrom = bankAccountDAO.findByNumber(accountFrom).orElseThrow(NoSuchAccountException::new);
-        if(bankAccountFrom.getBalance().compareTo(amount) < 0) throw new NotEnoughBalanceException();
         BankAccount bankAccountTo = bankAccountDAO.findByNumber(accountTo).orElseThrow(NoSuchAccountException::new);
-        bankAccountTo.moveBalance(amount);
+        int slot = bankAccountTo.isSplit() && !accountFrom.equals(accountTo)
+                ? ThreadLocalRandom.current().nextInt(bankAccountTo.getBalanceSlots())
+                : -1;
+        accountLocks.lockUntilCompletion(accountFrom, slot < 0 ? accountTo : new SlotKey(accountTo, slot));
+
+        BankAccount bankAccountFrom = bankAccountDAO.findByNumber(accountFrom).orElseThrow(NoSuchAccountException::new);
+        bankAccountDAO.refresh(bankAccountFrom, rowLocks);
+        if(totalBalance(bankAccountFrom).compareTo(amount) < 0) throw new NotEnoughBalanceException();
         bankAccountFrom.moveBalance(amount.negate());
         bankAccountDAO.save(bankAccountFrom);
-        bankAccountDAO.save(bankAccountTo);
+
+        if (slot < 0) {
+            if (bankAccountTo != bankAccountFrom) bankAccountDAO.refresh(bankAccountTo, rowLocks);
+            bankAccountTo.moveBalance(amount);
+            bankAccountDAO.save(bankAccountTo);
+        } else {
+            BalanceSlot balanceSlot = balanceSlotDAO.findByAccountAndSlot(accountTo, slot).orElseThrow(NoSuchAccountException::new);
+            balanceSlotDAO.refresh(balanceSlot, rowLocks);
+            balanceSlot.credit(amount);
+        }
     }
 }
@@ -2,19 +2,14 @@ package pt.tecnico.sirs.databaseserver.repository.service.engine;
 
 import pt.tecnico.sirs.databaseserver.domain.Movement;
 import pt.tecnico.sirs.databaseserver.dto.*;
-import pt.tecnico.sirs.databaseserver.repository.exceptions.MovementWithNoDestinationAccountException;
 import pt.tecnico.sirs.databaseserver.repository.exceptions.MovementWithNoFromAccountException;
-import pt.tecnico.sirs.databaseserver.repository.exceptions.NoSuchAccountException;
-import pt.tecnico.sirs.databaseserver.repository.exceptions.NoSuchAccountHolderException;
 import pt.tecnico.sirs.databaseserver.repository.service.engine.impl.MovementDAO;
 
 import javax.transaction.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class MovementService {
     private final MovementDAO movementDAO;
@@ -37,8 +32,8 @@ public class MovementService {
     }
 
     @Transactional
-    public MovementDto addMovement(String username, LocalDateTime date, BigDecimal amount, String description) {
-        BankAccountDto accountDto = bankAccountService.getByHolder(username).orElseThrow(NoSuchAccountException::new);
+    public MovementDto addMovement(AccountContextDto context, LocalDateTime date, BigDecimal amount, String description) {
+        BankAccountDto accountDto = context.account();
         Movement movement = new Movement(new MovementDto(
                 UUID.randomUUID(),
                 accountDto.number(),
@@ -51,13 +46,12 @@ public class MovementService {
         return toDto(movement);
     }
 
-    public List<MovementDto> getAccountMovements(String username) {
-        UUID number  = bankAccountService.getByHolder(username).orElseThrow(NoSuchAccountHolderException::new).number();
-        List<MovementDto> movements = new ArrayList<>();
-        movements.addAll(movementDAO.findByAccountFrom(number).stream().map(m -> new MovementDto(m.getMovementNumber(), m.getFromAccountNumber().orElseThrow(MovementWithNoFromAccountException::new), m.getMovementDate(), m.getAmount().negate(), m.getDescription(), m.getCurrency())).toList());
-        movements.addAll(movementDAO.findByAccountTo(number).stream().map(m -> new MovementDto(m.getMovementNumber(), m.getDestinationAccountNumber().orElseThrow(MovementWithNoDestinationAccountException::new), m.getMovementDate(), m.getAmount(), m.getDescription(), m.getCurrency())).toList());
-        movements.sort(Comparator.comparing(MovementDto::date));
-        return movements;
+    public void forEachAccountMovement(AccountContextDto context, Consumer<MovementDto> consumer) {
+        movementDAO.forEachByAccount(context.account().number(), consumer);
+    }
+
+    public MovementPageDto getAccountMovementsPage(AccountContextDto context, LocalDateTime from, LocalDateTime to, MovementCursorDto cursor, int pageSize) {
+        return movementDAO.findPageByAccount(context.account().number(), from, to, cursor, pageSize);
     }
 
     public MovementDto addPayment(OrderPaymentDto paymentOrder) {
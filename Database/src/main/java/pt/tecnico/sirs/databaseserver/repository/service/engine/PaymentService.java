@@ -3,7 +3,6 @@ package pt.tecnico.sirs.databaseserver.repository.service.engine;
 import pt.tecnico.sirs.databaseserver.domain.Payment;
 import pt.tecnico.sirs.databaseserver.dto.*;
 import pt.tecnico.sirs.databaseserver.repository.exceptions.IllegalPaymentOrderBalance;
-import pt.tecnico.sirs.databaseserver.repository.exceptions.NoSuchAccountException;
 import pt.tecnico.sirs.databaseserver.repository.exceptions.NoSuchAccountHolderException;
 import pt.tecnico.sirs.databaseserver.repository.exceptions.NotEnoughBalanceException;
 import pt.tecnico.sirs.databaseserver.repository.service.engine.impl.PaymentDAO;
@@ -70,21 +69,22 @@ public class PaymentService {
         payment.setAuthorized(true);
     }
 
-    public PaymentDto orderPayment(String username, LocalDateTime date, BigDecimal amount, String description, String recipient) {
+    public PaymentDto orderPayment(AccountContextDto context, LocalDateTime date, BigDecimal amount, String description, String recipient) {
         if (amount.compareTo(BigDecimal.ZERO) < 0) throw new IllegalPaymentOrderBalance();
-        HolderDto holderDto = holderService.getHolderByName(username).orElseThrow(NoSuchAccountHolderException::new);
-        BankAccountDto bankAccount = bankAccountService.getByHolder(holderDto.name()).orElseThrow(NoSuchAccountException::new);
+        HolderDto holderDto = context.holder();
+        BankAccountDto bankAccount = context.account();
         if (amount.compareTo(bankAccount.balance()) > 0) throw new NotEnoughBalanceException();
+        UUID recipientAccount = holderService.getHolderByName(recipient).orElseThrow(NoSuchAccountHolderException::new).accountNumber();
 
         Payment payment = paymentDAO.getPaymentByAccountFromAndAccountToAndAmountAndDescription(
             holderDto.accountNumber(),
-            holderService.getHolderByName(recipient).orElseThrow(NoSuchAccountHolderException::new).accountNumber(),
+            recipientAccount,
             amount,
             description
         ).orElseGet(() -> {
             Payment p = new Payment(
                 holderDto.accountNumber(),
-                holderService.getHolderByName(recipient).orElseThrow(NoSuchAccountHolderException::new).accountNumber(),
+                recipientAccount,
                 amount,
                 date,
                 description,
@@ -99,4 +99,4 @@ public class PaymentService {
 
         return toDto(payment);
     }
-}
+}
\ No newline at end of file
@@ -2,6 +2,7 @@ package pt.tecnico.sirs.databaseserver.repository.service.engine.impl;
 
 import org.hibernate.SessionFactory;
 import pt.tecnico.sirs.databaseserver.domain.Approval;
+import pt.tecnico.sirs.databaseserver.domain.BlindIndex;
 
 import java.util.List;
 import java.util.UUID;
@@ -14,8 +15,8 @@ public class ApprovalDAO extends AbstractDAO<Approval, Long> {
     public List<Approval> getApprovalsByPaymentRef(UUID paymentRef) {
         return sessionFactory.getCurrentSession()
             .createQuery(
-                    "FROM " + Approval.class.getSimpleName() + " a WHERE a.paymentRef=:paymentRef", Approval.class
-            ).setParameter("paymentRef", paymentRef)
+                    "FROM " + Approval.class.getSimpleName() + " a WHERE a.paymentRefIndex=:paymentRefIndex", Approval.class
+            ).setParameter("paymentRefIndex", BlindIndex.of(paymentRef))
             .list();
     }
 }
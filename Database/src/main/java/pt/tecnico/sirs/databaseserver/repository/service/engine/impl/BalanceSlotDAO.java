@@ -0,0 +1,51 @@
+package pt.tecnico.sirs.databaseserver.repository.service.engine.impl;
+
+import org.hibernate.LockMode;
+import org.hibernate.SessionFactory;
+import pt.tecnico.sirs.databaseserver.domain.BalanceSlot;
+import pt.tecnico.sirs.databaseserver.domain.BlindIndex;
+
+import javax.persistence.NoResultException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public final class BalanceSlotDAO extends AbstractDAO<BalanceSlot, Long> {
+
+    public BalanceSlotDAO(SessionFactory sessionFactory) {
+        super(sessionFactory);
+    }
+
+    public Optional<BalanceSlot> findByAccountAndSlot(UUID account, int slot) {
+        try {
+            return Optional.ofNullable(sessionFactory.getCurrentSession()
+                .createQuery("FROM " + BalanceSlot.class.getSimpleName() + " s WHERE s.accountIndex=:account AND s.slot=:slot", BalanceSlot.class)
+                .setParameter("account", BlindIndex.of(account))
+                .setParameter("slot", slot)
+                .getSingleResult());
+        } catch (NoResultException e) {
+            return Optional.empty();
+        }
+    }
+
+    public List<BalanceSlot> findByAccount(UUID account) {
+        return sessionFactory.getCurrentSession()
+            .createQuery("FROM " + BalanceSlot.class.getSimpleName() + " s WHERE s.accountIndex=:account", BalanceSlot.class)
+            .setParameter("account", BlindIndex.of(account))
+            .list();
+    }
+
+    // Decrypted and summed in Postgres, without loading the slots
+    public BigDecimal sumByAccount(UUID account) {
+        BigDecimal sum = sessionFactory.getCurrentSession()
+            .createQuery("SELECT SUM(s.amount) FROM " + BalanceSlot.class.getSimpleName() + " s WHERE s.accountIndex=:account", BigDecimal.class)
+            .setParameter("account", BlindIndex.of(account))
+            .getSingleResult();
+        return sum == null ? BigDecimal.ZERO : sum;
+    }
+
+    public void refresh(BalanceSlot slot, boolean forUpdate) {
+        sessionFactory.getCurrentSession().refresh(slot, forUpdate ? LockMode.PESSIMISTIC_WRITE : LockMode.NONE);
+    }
+}
@@ -1,9 +1,10 @@
 package pt.tecnico.sirs.databaseserver.repository.service.engine.impl;
 
+import org.hibernate.LockMode;
 import org.hibernate.SessionFactory;
 import pt.tecnico.sirs.databaseserver.domain.BankAccount;
+import pt.tecnico.sirs.databaseserver.domain.BlindIndex;
 
-import javax.persistence.NoResultException;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -13,14 +14,16 @@ public final class BankAccountDAO extends AbstractDAO<BankAccount, Long> {
         super(sessionFactory);
     }
 
+    // Resolved through the natural-id and entity caches, only a miss decrypts the row in Postgres
     public Optional<BankAccount> findByNumber(UUID number) {
-        try {
-            return Optional.ofNullable(sessionFactory.getCurrentSession()
-                .createQuery("FROM " + BankAccount.class.getSimpleName() + " h WHERE h.number=:number", BankAccount.class)
-                .setParameter("number", number)
-                .getSingleResult());
-        } catch (NoResultException e) {
-            return Optional.empty();
-        }
+        return sessionFactory.getCurrentSession()
+            .byNaturalId(BankAccount.class)
+            .using("numberIndex", BlindIndex.of(number))
+            .loadOptional();
+    }
+
+    // Re-reads the row past both caches, optionally holding it with SELECT ... FOR UPDATE until commit
+    public void refresh(BankAccount account, boolean forUpdate) {
+        sessionFactory.getCurrentSession().refresh(account, forUpdate ? LockMode.PESSIMISTIC_WRITE : LockMode.NONE);
     }
 }
@@ -2,8 +2,9 @@ package pt.tecnico.sirs.databaseserver.repository.service.engine.impl;
 
 import org.hibernate.SessionFactory;
 import pt.tecnico.sirs.databaseserver.domain.BankAccountHolder;
+import pt.tecnico.sirs.databaseserver.domain.BlindIndex;
+import pt.tecnico.sirs.databaseserver.repository.core.HibernateUtil;
 
-import javax.persistence.NoResultException;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -15,36 +16,22 @@ public class BankAccountHolderDAO extends AbstractDAO<BankAccountHolder, Long> {
     }
 
     public Optional<BankAccountHolder> findByName(String name) {
-        try {
-            return Optional.ofNullable(
-                    sessionFactory.getCurrentSession()
-                            .createQuery("FROM " + BankAccountHolder.class.getSimpleName() + " a WHERE a.name=:name", BankAccountHolder.class)
-                            .setParameter("name", name)
-                            .getSingleResult()
-            );
-        } catch (NoResultException e) {
-            return Optional.empty();
-        }
+        return sessionFactory.getCurrentSession()
+                .byNaturalId(BankAccountHolder.class)
+                .using("nameIndex", BlindIndex.of(name))
+                .loadOptional();
     }
 
     public boolean checkExists(String name) {
-        try {
-            Optional<BankAccountHolder> holder = Optional.ofNullable(
-                    sessionFactory.getCurrentSession()
-                            .createQuery("FROM " + BankAccountHolder.class.getSimpleName() + " a WHERE a.name=:name", BankAccountHolder.class)
-                            .setParameter("name", name)
-                            .getSingleResult()
-            );
-            return holder.isPresent();
-        } catch (NoResultException e) {
-            return false;
-        }
+        return findByName(name).isPresent();
     }
 
     public List<BankAccountHolder> findByAccountNumber(UUID accountNumber) {
         return sessionFactory.getCurrentSession()
-                .createQuery("FROM " + BankAccountHolder.class.getSimpleName() + " h WHERE h.accountNumber=:accountNumber", BankAccountHolder.class)
-                .setParameter("accountNumber", accountNumber)
+                .createQuery("FROM " + BankAccountHolder.class.getSimpleName() + " h WHERE h.accountNumberIndex=:accountNumberIndex", BankAccountHolder.class)
+                .setParameter("accountNumberIndex", BlindIndex.of(accountNumber))
+                .setCacheable(true)
+                .setCacheRegion(HibernateUtil.HOLDERS_BY_ACCOUNT_REGION)
                 .list();
     }
 }
@@ -1,29 +1,100 @@
 package pt.tecnico.sirs.databaseserver.repository.service.engine.impl;
 
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+import pt.tecnico.sirs.databaseserver.domain.BlindIndex;
 import pt.tecnico.sirs.databaseserver.domain.Movement;
+import pt.tecnico.sirs.databaseserver.dto.MovementCursorDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementDto;
+import pt.tecnico.sirs.databaseserver.dto.MovementPageDto;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public final class MovementDAO extends AbstractDAO<Movement, Long> {
 
+    private static final int FETCH_SIZE = 512;
+    private static final String ACCOUNT_MOVEMENTS_QUERY = """
+            SELECT pgp_sym_decrypt(m.movementNumber, 'movement')::uuid AS movementRef,
+                   pgp_sym_decrypt(m.accountFrom, 'movement')::uuid AS account,
+                   pgp_sym_decrypt(m.movementDate, 'movement')::timestamp AS date,
+                   -(pgp_sym_decrypt(m.amount, 'movement')::numeric) AS amount,
+                   pgp_sym_decrypt(m.description, 'movement') AS description,
+                   pgp_sym_decrypt(m.currency, 'account') AS currency
+            FROM Movement m
+            WHERE m.accountFromIndex = :account
+            UNION ALL
+            SELECT pgp_sym_decrypt(m.movementNumber, 'movement')::uuid,
+                   pgp_sym_decrypt(m.accountTo, 'movement')::uuid,
+                   pgp_sym_decrypt(m.movementDate, 'movement')::timestamp,
+                   pgp_sym_decrypt(m.amount, 'movement')::numeric,
+                   pgp_sym_decrypt(m.description, 'movement'),
+                   pgp_sym_decrypt(m.currency, 'account')
+            FROM Movement m
+            WHERE m.accountToIndex = :account
+            ORDER BY date
+            """;
+    private static final String ACCOUNT_PAGE_BRANCH = """
+            (SELECT pgp_sym_decrypt(m.movementNumber, 'movement')::uuid AS movementRef,
+                    pgp_sym_decrypt(m.%1$s, 'movement')::uuid AS account,
+                    pgp_sym_decrypt(m.movementDate, 'movement')::timestamp AS date,
+                    %2$s(pgp_sym_decrypt(m.amount, 'movement')::numeric) AS amount,
+                    pgp_sym_decrypt(m.description, 'movement') AS description,
+                    pgp_sym_decrypt(m.currency, 'account') AS currency,
+                    m.movementSequence AS sequence
+             FROM Movement m
+             WHERE m.%1$sIndex = :account AND m.movementSequence > :after%3$s
+             ORDER BY m.movementSequence
+             LIMIT :pageSize)
+            """;
+
     public MovementDAO(SessionFactory sessionFactory) {
         super(sessionFactory);
     }
-    public List<Movement> findByAccountFrom(UUID number) {
-        return sessionFactory.getCurrentSession()
-            .createQuery(
-                "FROM " + Movement.class.getSimpleName() + " m WHERE m.accountFrom=:account", Movement.class
-            ).setParameter("account", number)
-            .list();
+    // Both directions in one native query, decrypted, signed and sorted by Postgres and projected straight into
+    // MovementDto; rows are read through a forward-only cursor so the history is never held in memory at once
+    public void forEachByAccount(UUID number, Consumer<MovementDto> consumer) {
+        try (ScrollableResults results = sessionFactory.getCurrentSession()
+                .createNativeQuery(ACCOUNT_MOVEMENTS_QUERY, Movement.MOVEMENT_DTO_MAPPING)
+                .setParameter("account", BlindIndex.of(number))
+                .setReadOnly(true)
+                .setFetchSize(FETCH_SIZE)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next())
+                consumer.accept((MovementDto) results.get(0));
+        }
     }
 
-    public List<Movement> findByAccountTo(UUID number) {
-        return sessionFactory.getCurrentSession()
-            .createQuery(
-                "FROM " + Movement.class.getSimpleName() + " m WHERE m.accountTo=:account", Movement.class
-            ).setParameter("account", number)
-            .list();
+    // Keyset page of the movements in either direction, in the order they were recorded: each direction is read off
+    // its (account index, sequence) index from the cursor on and stops after a page, so a page only decrypts the rows
+    // it scans past the cursor, whatever the length of the history; outgoing movements are negated as above
+    public MovementPageDto findPageByAccount(UUID number, LocalDateTime from, LocalDateTime to, MovementCursorDto cursor, int pageSize) {
+        String dates = (from == null ? "" : " AND pgp_sym_decrypt(m.movementDate, 'movement')::timestamp >= :from")
+                + (to == null ? "" : " AND pgp_sym_decrypt(m.movementDate, 'movement')::timestamp < :to");
+        String sql = "SELECT * FROM (" + ACCOUNT_PAGE_BRANCH.formatted("accountFrom", "-", dates)
+                + " UNION ALL " + ACCOUNT_PAGE_BRANCH.formatted("accountTo", "", dates)
+                + ") page ORDER BY sequence LIMIT :pageSize";
+
+        NativeQuery<?> query = sessionFactory.getCurrentSession()
+                .createNativeQuery(sql, Movement.MOVEMENT_PAGE_MAPPING)
+                .setParameter("account", BlindIndex.of(number))
+                .setParameter("after", cursor == null ? 0L : cursor.movement())
+                .setParameter("pageSize", pageSize)
+                .setReadOnly(true);
+        if (from != null) query.setParameter("from", from);
+        if (to != null) query.setParameter("to", to);
+
+        List<MovementDto> page = new ArrayList<>(pageSize);
+        for (Object row : query.list()) {
+            Object[] columns = (Object[]) row;
+            page.add((MovementDto) columns[0]);
+            cursor = new MovementCursorDto((Long) columns[1]);
+        }
+        return new MovementPageDto(page, page.size() < pageSize, cursor);
     }
 }
@@ -1,6 +1,7 @@
 package pt.tecnico.sirs.databaseserver.repository.service.engine.impl;
 
 import org.hibernate.SessionFactory;
+import pt.tecnico.sirs.databaseserver.domain.BlindIndex;
 import pt.tecnico.sirs.databaseserver.domain.Payment;
 
 import javax.persistence.NoResultException;
@@ -19,12 +20,12 @@ public class PaymentDAO extends AbstractDAO<Payment, Long> implements Serializab
             return Optional.ofNullable(
                     sessionFactory.getCurrentSession()
                             .createQuery("FROM " + Payment.class.getSimpleName() + " p " +
-                                    "WHERE p.accountFrom=:accountFrom " +
-                                    "AND p.accountTo=:accountTo " +
+                                    "WHERE p.accountFromIndex=:accountFrom " +
+                                    "AND p.accountToIndex=:accountTo " +
                                     "AND p.amount=:amount " +
                                     "AND p.description=:description", Payment.class)
-                            .setParameter("accountFrom", accountFrom)
-                            .setParameter("accountTo", accountTo)
+                            .setParameter("accountFrom", BlindIndex.of(accountFrom))
+                            .setParameter("accountTo", BlindIndex.of(accountTo))
                             .setParameter("amount", amount)
                             .setParameter("description", description)
                             .getSingleResult()
@@ -0,0 +1,62 @@
+-- Backfills the keyed HMAC-SHA256 blind index columns of databases created before they existed.
+-- The key must be the one the Database server generated in resources/crypto/database/indexKey on its first start,
+-- which is not part of the repository; start the server once before running it:
+--   psql -h localhost -U bling -d blingbank \
+--        -v index_key="$(xxd -p -c 256 Database/resources/crypto/database/indexKey)" \
+--        -f Scripts/Database/blindIndexMigration.sql
+
+CREATE EXTENSION IF NOT EXISTS pgcrypto;
+
+BEGIN;
+
+-- Accounts
+ALTER TABLE BankAccount ADD COLUMN IF NOT EXISTS numberIndex bytea;
+UPDATE BankAccount
+    SET numberIndex = hmac(convert_to(pgp_sym_decrypt(number, 'account'), 'UTF8'), decode(:'index_key', 'hex'), 'sha256')
+    WHERE numberIndex IS NULL;
+ALTER TABLE BankAccount ALTER COLUMN numberIndex SET NOT NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS account_number_index ON BankAccount (numberIndex);
+
+-- Holders
+ALTER TABLE BankAccountHolder ADD COLUMN IF NOT EXISTS nameIndex bytea;
+ALTER TABLE BankAccountHolder ADD COLUMN IF NOT EXISTS accountNumberIndex bytea;
+UPDATE BankAccountHolder
+    SET nameIndex = hmac(convert_to(pgp_sym_decrypt(name, 'holder'), 'UTF8'), decode(:'index_key', 'hex'), 'sha256'),
+        accountNumberIndex = hmac(convert_to(pgp_sym_decrypt(accountNumber, 'holder'), 'UTF8'), decode(:'index_key', 'hex'), 'sha256')
+    WHERE nameIndex IS NULL OR accountNumberIndex IS NULL;
+ALTER TABLE BankAccountHolder ALTER COLUMN nameIndex SET NOT NULL;
+ALTER TABLE BankAccountHolder ALTER COLUMN accountNumberIndex SET NOT NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS holder_name_index ON BankAccountHolder (nameIndex);
+CREATE INDEX IF NOT EXISTS holder_account_number_index ON BankAccountHolder (accountNumberIndex);
+
+-- Movements (expenses have no destination account, so accountToIndex stays null for them)
+ALTER TABLE Movement ADD COLUMN IF NOT EXISTS accountFromIndex bytea;
+ALTER TABLE Movement ADD COLUMN IF NOT EXISTS accountToIndex bytea;
+UPDATE Movement
+    SET accountFromIndex = hmac(convert_to(pgp_sym_decrypt(accountFrom, 'movement'), 'UTF8'), decode(:'index_key', 'hex'), 'sha256'),
+        accountToIndex = hmac(convert_to(pgp_sym_decrypt(accountTo, 'movement'), 'UTF8'), decode(:'index_key', 'hex'), 'sha256')
+    WHERE accountFromIndex IS NULL;
+ALTER TABLE Movement ALTER COLUMN accountFromIndex SET NOT NULL;
+CREATE INDEX IF NOT EXISTS movement_account_from_index ON Movement (accountFromIndex);
+CREATE INDEX IF NOT EXISTS movement_account_to_index ON Movement (accountToIndex);
+
+-- Approvals
+ALTER TABLE Approval ADD COLUMN IF NOT EXISTS paymentRefIndex bytea;
+UPDATE Approval
+    SET paymentRefIndex = hmac(convert_to(pgp_sym_decrypt(paymentRef, 'approval'), 'UTF8'), decode(:'index_key', 'hex'), 'sha256')
+    WHERE paymentRefIndex IS NULL;
+ALTER TABLE Approval ALTER COLUMN paymentRefIndex SET NOT NULL;
+CREATE INDEX IF NOT EXISTS approval_payment_ref_index ON Approval (paymentRefIndex);
+
+-- Payments
+ALTER TABLE Payment ADD COLUMN IF NOT EXISTS accountFromIndex bytea;
+ALTER TABLE Payment ADD COLUMN IF NOT EXISTS accountToIndex bytea;
+UPDATE Payment
+    SET accountFromIndex = hmac(convert_to(pgp_sym_decrypt(accountFrom, 'payment'), 'UTF8'), decode(:'index_key', 'hex'), 'sha256'),
+        accountToIndex = hmac(convert_to(pgp_sym_decrypt(accountTo, 'payment'), 'UTF8'), decode(:'index_key', 'hex'), 'sha256')
+    WHERE accountFromIndex IS NULL OR accountToIndex IS NULL;
+ALTER TABLE Payment ALTER COLUMN accountFromIndex SET NOT NULL;
+ALTER TABLE Payment ALTER COLUMN accountToIndex SET NOT NULL;
+CREATE INDEX IF NOT EXISTS payment_accounts_index ON Payment (accountFromIndex, accountToIndex);
+
+COMMIT;
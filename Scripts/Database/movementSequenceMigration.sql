@@ -0,0 +1,14 @@
+-- Adds the plaintext sequence number movements are paged on to databases created before it existed, numbering the
+-- existing movements in the order they are stored, and replaces the single column account indexes with ones that
+-- also cover it:
+--   psql -h localhost -U bling -d blingbank -f Scripts/Database/movementSequenceMigration.sql
+
+BEGIN;
+
+ALTER TABLE Movement ADD COLUMN IF NOT EXISTS movementSequence bigserial;
+CREATE INDEX IF NOT EXISTS movement_account_from_sequence_index ON Movement (accountFromIndex, movementSequence);
+CREATE INDEX IF NOT EXISTS movement_account_to_sequence_index ON Movement (accountToIndex, movementSequence);
+DROP INDEX IF EXISTS movement_account_from_index;
+DROP INDEX IF EXISTS movement_account_to_index;
+
+COMMIT;
@@ -0,0 +1,195 @@
+package pt.tecnico.sirs.telemetry;
+
+import io.grpc.Context;
+import io.grpc.Status;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+// Process-wide registry of RPC and per-stage latencies, in-flight calls, outcomes and gauges, rendered in the
+// Prometheus text exposition format
+public final class Metrics {
+    private static final Metrics registry = new Metrics();
+    private static final String PREFIX = "securebank_";
+    private static final String NO_RPC = "none";
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    static final Context.Key<String> RPC = Context.key("metrics-rpc");
+
+    // Writers only touch the recorder; scrapes fold its interval histogram into the running total
+    private static final class Latency {
+        private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+        private final Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+        private Histogram interval;
+
+        private void record(long nanos) {
+            recorder.recordValue(Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS)));
+        }
+
+        private synchronized Histogram snapshot() {
+            interval = recorder.getIntervalHistogram(interval);
+            total.add(interval);
+            return total.copy();
+        }
+    }
+
+    private record StageKey(String rpc, Stage stage) {}
+    private record OutcomeKey(String rpc, Status.Code code) {}
+    private record Gauge(String help, DoubleSupplier value) {}
+
+    private final Map<String, Latency> rpcLatencies = new ConcurrentHashMap<>();
+    private final Map<StageKey, Latency> stageLatencies = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> inFlight = new ConcurrentHashMap<>();
+    private final Map<OutcomeKey, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    private Metrics() {}
+
+    public static Metrics registry() {
+        return registry;
+    }
+
+    // Full method name of the call being served on this thread, as set by MetricsInterceptor
+    public static String currentRpc() {
+        String rpc = RPC.get();
+        return rpc == null ? NO_RPC : rpc;
+    }
+
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    // Stages timed on the serving thread also become spans of the call's trace
+    public void record(Stage stage, long startNanos) {
+        record(currentRpc(), stage, startNanos);
+        Tracing.tracer().record(stage.label(), startNanos);
+    }
+
+    public void record(String rpc, Stage stage, long startNanos) {
+        stageLatencies.computeIfAbsent(new StageKey(rpc, stage), ignored -> new Latency()).record(now() - startNanos);
+    }
+
+    void started(String rpc) {
+        inFlight.computeIfAbsent(rpc, ignored -> new AtomicLong()).incrementAndGet();
+    }
+
+    void finished(String rpc, Status.Code code, long startNanos) {
+        inFlight.computeIfAbsent(rpc, ignored -> new AtomicLong()).decrementAndGet();
+        rpcLatencies.computeIfAbsent(rpc, ignored -> new Latency()).record(now() - startNanos);
+        outcomes.computeIfAbsent(new OutcomeKey(rpc, code), ignored -> new LongAdder()).increment();
+    }
+
+    // Values owned elsewhere (pools, caches, locks) sampled at scrape time; names are prefixed and must be unique
+    public void gauge(String name, String help, DoubleSupplier value) {
+        gauges.put(PREFIX + name, new Gauge(help, value));
+    }
+
+    // Latencies recorded so far, for reports made in the same process; diff two snapshots to isolate an interval
+    public Map<String, Histogram> getRpcLatencies() {
+        Map<String, Histogram> snapshot = new TreeMap<>();
+        rpcLatencies.forEach((rpc, latency) -> snapshot.put(rpc, latency.snapshot()));
+        return snapshot;
+    }
+
+    public Map<Stage, Histogram> getStageLatencies(String rpc) {
+        Map<Stage, Histogram> snapshot = new EnumMap<>(Stage.class);
+        stageLatencies.forEach((key, latency) -> {
+            if (key.rpc().equals(rpc)) snapshot.put(key.stage(), latency.snapshot());
+        });
+        return snapshot;
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP ").append(PREFIX).append("rpc_latency_seconds Server side latency of each RPC\n");
+        out.append("# TYPE ").append(PREFIX).append("rpc_latency_seconds summary\n");
+        rpcLatencies.forEach((rpc, latency) ->
+                summary(out, PREFIX + "rpc_latency_seconds", "method=\"" + rpc + "\"", latency.snapshot()));
+
+        out.append("# HELP ").append(PREFIX).append("stage_latency_seconds Latency of each stage of an RPC\n");
+        out.append("# TYPE ").append(PREFIX).append("stage_latency_seconds summary\n");
+        stageLatencies.forEach((key, latency) ->
+                summary(out, PREFIX + "stage_latency_seconds", "method=\"" + key.rpc() + "\",stage=\"" + key.stage().label() + "\"", latency.snapshot()));
+
+        out.append("# HELP ").append(PREFIX).append("rpc_in_flight RPCs being served\n");
+        out.append("# TYPE ").append(PREFIX).append("rpc_in_flight gauge\n");
+        inFlight.forEach((rpc, calls) ->
+                sample(out, PREFIX + "rpc_in_flight", "method=\"" + rpc + "\"", calls.get()));
+
+        out.append("# HELP ").append(PREFIX).append("rpc_handled_total RPCs completed, by status code\n");
+        out.append("# TYPE ").append(PREFIX).append("rpc_handled_total counter\n");
+        outcomes.forEach((key, count) ->
+                sample(out, PREFIX + "rpc_handled_total", "method=\"" + key.rpc() + "\",code=\"" + key.code() + "\"", count.sum()));
+
+        gauges.forEach((name, gauge) -> {
+            out.append("# HELP ").append(name).append(' ').append(gauge.help()).append('\n');
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            sample(out, name, null, gauge.value().getAsDouble());
+        });
+
+        jvm(out);
+        return out.toString();
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, Histogram histogram) {
+        for (double quantile : QUANTILES)
+            sample(out, name, labels + ",quantile=\"" + quantile + "\"", seconds(histogram.getValueAtPercentile(quantile * 100)));
+        sample(out, name + "_sum", labels, seconds(histogram.getMean() * histogram.getTotalCount()));
+        sample(out, name + "_count", labels, histogram.getTotalCount());
+    }
+
+    private static void jvm(StringBuilder out) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+        out.append("# HELP jvm_memory_used_bytes Used bytes of a memory area\n");
+        out.append("# TYPE jvm_memory_used_bytes gauge\n");
+        sample(out, "jvm_memory_used_bytes", "area=\"heap\"", heap.getUsed());
+        sample(out, "jvm_memory_used_bytes", "area=\"nonheap\"", nonHeap.getUsed());
+        out.append("# HELP jvm_memory_committed_bytes Committed bytes of a memory area\n");
+        out.append("# TYPE jvm_memory_committed_bytes gauge\n");
+        sample(out, "jvm_memory_committed_bytes", "area=\"heap\"", heap.getCommitted());
+        sample(out, "jvm_memory_committed_bytes", "area=\"nonheap\"", nonHeap.getCommitted());
+
+        out.append("# HELP jvm_gc_collection_seconds Time spent in a garbage collector\n");
+        out.append("# TYPE jvm_gc_collection_seconds summary\n");
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String labels = "gc=\"" + collector.getName() + "\"";
+            sample(out, "jvm_gc_collection_seconds_count", labels, collector.getCollectionCount());
+            sample(out, "jvm_gc_collection_seconds_sum", labels, collector.getCollectionTime() / 1e3);
+        }
+
+        out.append("# HELP jvm_threads_live Live threads\n");
+        out.append("# TYPE jvm_threads_live gauge\n");
+        sample(out, "jvm_threads_live", null, ManagementFactory.getThreadMXBean().getThreadCount());
+        out.append("# HELP process_uptime_seconds Time since the JVM started\n");
+        out.append("# TYPE process_uptime_seconds gauge\n");
+        sample(out, "process_uptime_seconds", null, ManagementFactory.getRuntimeMXBean().getUptime() / 1e3);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) out.append('{').append(labels).append('}');
+        out.append(' ').append(Double.toString(value)).append('\n');
+    }
+
+    private static double seconds(double nanos) {
+        return nanos / 1e9;
+    }
+}
@@ -0,0 +1,47 @@
+package pt.tecnico.sirs.telemetry;
+
+import io.grpc.*;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Times every call from its start until it is closed or cancelled, and tags the call's Context with its method so
+// stages recorded while serving it are attributed to it
+public final class MetricsInterceptor implements ServerInterceptor {
+    private final Metrics metrics;
+
+    public MetricsInterceptor() {
+        this(Metrics.registry());
+    }
+
+    public MetricsInterceptor(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        String rpc = call.getMethodDescriptor().getFullMethodName();
+        long start = Metrics.now();
+        AtomicBoolean finished = new AtomicBoolean();
+        metrics.started(rpc);
+
+        ServerCall<ReqT, RespT> timedCall = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                if (finished.compareAndSet(false, true)) metrics.finished(rpc, status.getCode(), start);
+                super.close(status, trailers);
+            }
+        };
+
+        ServerCall.Listener<ReqT> listener = Contexts.interceptCall(
+                Context.current().withValue(Metrics.RPC, rpc), timedCall, headers, next
+        );
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                if (finished.compareAndSet(false, true)) metrics.finished(rpc, Status.Code.CANCELLED, start);
+                super.onCancel();
+            }
+        };
+    }
+}
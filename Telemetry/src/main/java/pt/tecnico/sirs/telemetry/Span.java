@@ -0,0 +1,90 @@
+package pt.tecnico.sirs.telemetry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// One timed operation of a trace; ended exactly once, at which point it is handed to the exporter
+public final class Span {
+    public enum Kind { SERVER, CLIENT, INTERNAL }
+
+    static final Span NOOP = new Span(null, null, null, null, null, Kind.INTERNAL, 0);
+
+    private final Tracing tracing;
+    private final String traceId;
+    private final String id;
+    private final String parentId;
+    private final String name;
+    private final Kind kind;
+    private final long startNanos;
+    private final long startMicros;
+    private final Map<String, String> tags = new LinkedHashMap<>(4);
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private long durationMicros;
+
+    Span(Tracing tracing, String traceId, String id, String parentId, String name, Kind kind, long startNanos) {
+        this.tracing = tracing;
+        this.traceId = traceId;
+        this.id = id;
+        this.parentId = parentId;
+        this.name = name;
+        this.kind = kind;
+        this.startNanos = startNanos;
+        // Wall clock anchor for the exporter, back-dated when the span started before it was created
+        this.startMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis())
+                - TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    }
+
+    public boolean isRecording() {
+        return tracing != null;
+    }
+
+    public synchronized Span tag(String key, String value) {
+        if (isRecording() && !ended.get()) tags.put(key, value);
+        return this;
+    }
+
+    public void end() {
+        if (!isRecording() || !ended.compareAndSet(false, true)) return;
+        durationMicros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        tracing.export(this);
+    }
+
+    // W3C trace context header value, always sampled
+    public String traceparent() {
+        return "00-" + traceId + "-" + id + "-01";
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getParentId() {
+        return parentId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getStartMicros() {
+        return startMicros;
+    }
+
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    public synchronized Map<String, String> getTags() {
+        return Map.copyOf(tags);
+    }
+}
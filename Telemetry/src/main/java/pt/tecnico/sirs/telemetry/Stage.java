@@ -0,0 +1,18 @@
+package pt.tecnico.sirs.telemetry;
+
+// Steps a request goes through inside a server, each with its own latency histogram per RPC; opening an envelope
+// spans its decrypt and verify steps, sealing one spans its encrypt step
+public enum Stage {
+    OPEN,
+    DECRYPT,
+    VERIFY,
+    PARSE,
+    TRANSACTION,
+    SEAL,
+    ENCRYPT,
+    FORWARD;
+
+    public String label() {
+        return name().toLowerCase();
+    }
+}
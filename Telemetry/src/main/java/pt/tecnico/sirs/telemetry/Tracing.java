@@ -0,0 +1,113 @@
+package pt.tecnico.sirs.telemetry;
+
+import io.grpc.Context;
+import io.grpc.Metadata;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Process-wide tracer: spans follow the gRPC Context within a process and the W3C traceparent header across it.
+// Disabled, and close to free, until configured with a service name and a file to export to
+public final class Tracing {
+    private static final Tracing tracer = new Tracing();
+
+    static final Context.Key<Span> SPAN = Context.key("tracing-span");
+    static final Metadata.Key<String> TRACEPARENT = Metadata.Key.of("traceparent", Metadata.ASCII_STRING_MARSHALLER);
+
+    private volatile ZipkinFileExporter exporter;
+
+    private Tracing() {}
+
+    public static Tracing tracer() {
+        return tracer;
+    }
+
+    // Exports spans of this process to the file given by the trace-file variable, if any
+    public static Tracing fromEnvironment(String service) throws IOException {
+        String file = System.getenv("trace-file");
+        if (file != null && !file.isBlank()) tracer.configure(service, Path.of(file));
+        return tracer;
+    }
+
+    public synchronized void configure(String service, Path file) throws IOException {
+        if (exporter != null) exporter.close();
+        exporter = new ZipkinFileExporter(service, file);
+    }
+
+    public boolean isEnabled() {
+        return exporter != null;
+    }
+
+    public static Span current() {
+        Span span = SPAN.get();
+        return span == null ? Span.NOOP : span;
+    }
+
+    // Child of the span of the current Context, or the root of a new trace
+    public Span start(String name, Span.Kind kind) {
+        return start(name, kind, Metrics.now());
+    }
+
+    public Span start(String name, Span.Kind kind, long startNanos) {
+        if (!isEnabled()) return Span.NOOP;
+        Span parent = SPAN.get();
+        return parent == null || !parent.isRecording()
+                ? new Span(this, randomId(2), randomId(1), null, name, kind, startNanos)
+                : new Span(this, parent.getTraceId(), randomId(1), parent.getId(), name, kind, startNanos);
+    }
+
+    // Continues the trace of a remote caller, or starts one when the caller sent no valid traceparent
+    Span startRemote(String name, Span.Kind kind, String traceparent) {
+        if (!isEnabled()) return Span.NOOP;
+        String[] fields = traceparent == null ? null : traceparent.split("-");
+        if (fields == null || fields.length != 4 || fields[1].length() != 32 || fields[2].length() != 16)
+            return new Span(this, randomId(2), randomId(1), null, name, kind, Metrics.now());
+        return new Span(this, fields[1], randomId(1), fields[2], name, kind, Metrics.now());
+    }
+
+    // Records an already finished step of the current span, e.g. a stage timed by Metrics
+    public void record(String name, long startNanos) {
+        if (!isEnabled() || SPAN.get() == null) return;
+        start(name, Span.Kind.INTERNAL, startNanos).end();
+    }
+
+    public void inSpan(String name, Runnable body) {
+        Span span = start(name, Span.Kind.INTERNAL);
+        try {
+            Context.current().withValue(SPAN, span).run(body);
+        } finally {
+            span.end();
+        }
+    }
+
+    public static Context withSpan(Span span) {
+        return Context.current().withValue(SPAN, span);
+    }
+
+    void export(Span span) {
+        ZipkinFileExporter current = exporter;
+        if (current != null) current.export(span);
+    }
+
+    public long getDropped() {
+        ZipkinFileExporter current = exporter;
+        return current == null ? 0 : current.getDropped();
+    }
+
+    public synchronized void close() {
+        if (exporter != null) exporter.close();
+        exporter = null;
+    }
+
+    private static String randomId(int longs) {
+        StringBuilder id = new StringBuilder(16 * longs);
+        for (int i = 0; i < longs; i++) {
+            long value;
+            do value = ThreadLocalRandom.current().nextLong(); while (value == 0);
+            String hex = Long.toHexString(value);
+            id.append("0".repeat(16 - hex.length())).append(hex);
+        }
+        return id.toString();
+    }
+}
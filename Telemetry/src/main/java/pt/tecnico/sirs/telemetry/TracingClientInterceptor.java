@@ -0,0 +1,43 @@
+package pt.tecnico.sirs.telemetry;
+
+import io.grpc.*;
+
+// Opens a client span per outgoing call, child of the current span, and hands it to the callee as traceparent
+public final class TracingClientInterceptor implements ClientInterceptor {
+    private final Tracing tracing;
+
+    public TracingClientInterceptor() {
+        this(Tracing.tracer());
+    }
+
+    public TracingClientInterceptor(Tracing tracing) {
+        this.tracing = tracing;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions,
+                                                               Channel next) {
+        if (!tracing.isEnabled()) return next.newCall(method, callOptions);
+
+        Span span = tracing.start(method.getFullMethodName(), Span.Kind.CLIENT);
+        return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                headers.put(Tracing.TRACEPARENT, span.traceparent());
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(responseListener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        span.tag("grpc.status_code", status.getCode().name()).end();
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+
+            @Override
+            public void cancel(String message, Throwable cause) {
+                span.tag("grpc.status_code", Status.Code.CANCELLED.name()).end();
+                super.cancel(message, cause);
+            }
+        };
+    }
+}
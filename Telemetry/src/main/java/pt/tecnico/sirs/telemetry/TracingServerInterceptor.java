@@ -0,0 +1,40 @@
+package pt.tecnico.sirs.telemetry;
+
+import io.grpc.*;
+
+// Opens a server span per call, child of the caller's traceparent, and makes it current while the call is served
+public final class TracingServerInterceptor implements ServerInterceptor {
+    private final Tracing tracing;
+
+    public TracingServerInterceptor() {
+        this(Tracing.tracer());
+    }
+
+    public TracingServerInterceptor(Tracing tracing) {
+        this.tracing = tracing;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (!tracing.isEnabled()) return next.startCall(call, headers);
+
+        Span span = tracing.startRemote(call.getMethodDescriptor().getFullMethodName(), Span.Kind.SERVER, headers.get(Tracing.TRACEPARENT));
+        ServerCall<ReqT, RespT> tracedCall = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                span.tag("grpc.status_code", status.getCode().name()).end();
+                super.close(status, trailers);
+            }
+        };
+
+        ServerCall.Listener<ReqT> listener = Contexts.interceptCall(Tracing.withSpan(span), tracedCall, headers, next);
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                span.tag("grpc.status_code", Status.Code.CANCELLED.name()).end();
+                super.onCancel();
+            }
+        };
+    }
+}
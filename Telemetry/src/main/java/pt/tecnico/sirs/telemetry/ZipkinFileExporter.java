@@ -0,0 +1,135 @@
+package pt.tecnico.sirs.telemetry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Appends ended spans to a file as Zipkin v2 JSON, one span object per line, from a single background writer so
+// request threads never block on disk; spans are dropped, and counted, when the writer falls behind
+final class ZipkinFileExporter implements AutoCloseable {
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final int BATCH_SIZE = 256;
+
+    private final String service;
+    private final BlockingQueue<Span> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder dropped = new LongAdder();
+    private final BufferedWriter writer;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    ZipkinFileExporter(String service, Path file) throws IOException {
+        this.service = service;
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.thread = new Thread(this::drain, "trace-export");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void export(Span span) {
+        if (!queue.offer(span)) dropped.increment();
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    private void drain() {
+        List<Span> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (running || !queue.isEmpty()) {
+                Span first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(List<Span> batch) {
+        try {
+            StringBuilder line = new StringBuilder(512);
+            for (Span span : batch) {
+                line.setLength(0);
+                json(line, span);
+                writer.write(line.append('\n').toString());
+            }
+            writer.flush();
+        } catch (IOException e) {
+            dropped.add(batch.size());
+        }
+    }
+
+    private void json(StringBuilder out, Span span) {
+        out.append("{\"traceId\":\"").append(span.getTraceId()).append('"');
+        out.append(",\"id\":\"").append(span.getId()).append('"');
+        if (span.getParentId() != null) out.append(",\"parentId\":\"").append(span.getParentId()).append('"');
+        out.append(",\"name\":");
+        string(out, span.getName());
+        if (span.getKind() != Span.Kind.INTERNAL) out.append(",\"kind\":\"").append(span.getKind()).append('"');
+        out.append(",\"timestamp\":").append(span.getStartMicros());
+        out.append(",\"duration\":").append(span.getDurationMicros());
+        out.append(",\"localEndpoint\":{\"serviceName\":");
+        string(out, service);
+        out.append('}');
+        Map<String, String> tags = span.getTags();
+        if (!tags.isEmpty()) {
+            out.append(",\"tags\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                if (!first) out.append(',');
+                string(out, tag.getKey());
+                out.append(':');
+                string(out, tag.getValue());
+                first = false;
+            }
+            out.append('}');
+        }
+        out.append('}');
+    }
+
+    private static void string(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+                    else out.append(c);
+                }
+            }
+        }
+        out.append('"');
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+            writer.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ignored) {
+        }
+    }
+}
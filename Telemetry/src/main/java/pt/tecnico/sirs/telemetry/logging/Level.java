@@ -0,0 +1,15 @@
+package pt.tecnico.sirs.telemetry.logging;
+
+public enum Level {
+    TRACE, DEBUG, INFO, WARN, ERROR, OFF;
+
+    // Unknown or missing names fall back to the given level
+    public static Level of(String name, Level fallback) {
+        if (name == null || name.isBlank()) return fallback;
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package pt.tecnico.sirs.telemetry.logging;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Asynchronous log pipeline: request threads only capture the pattern and its arguments into a ring buffer, and one
+// background writer formats and writes them. Levels come from log-level (default INFO) and per module overrides in
+// log-levels, e.g. "database=debug,bank=warn"; output goes to log-file, or to the standard output when unset
+public final class Log {
+    private static final int CAPACITY = 1 << 14;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final Log log = new Log();
+
+    record Entry(long millis, Level level, String module, String thread, String pattern, Object[] args) {}
+
+    private final RingBuffer<Entry> buffer = new RingBuffer<>(CAPACITY);
+    private final LongAdder dropped = new LongAdder();
+    private final Map<String, Logger> loggers = new ConcurrentHashMap<>();
+    private final Map<String, Level> moduleLevels = new HashMap<>();
+    private final Level defaultLevel;
+    private final Writer writer;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private Log() {
+        this.defaultLevel = Level.of(System.getenv("log-level"), Level.INFO);
+        String overrides = System.getenv("log-levels");
+        if (overrides != null)
+            for (String override : overrides.split(",")) {
+                String[] moduleLevel = override.split("=");
+                if (moduleLevel.length == 2)
+                    moduleLevels.put(moduleLevel[0].trim(), Level.of(moduleLevel[1], defaultLevel));
+            }
+        this.writer = open(System.getenv("log-file"));
+        this.thread = new Thread(this::drain, "log-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "log-flush"));
+    }
+
+    public static Logger logger(String module) {
+        return log.loggers.computeIfAbsent(module, name -> new Logger(name, log.moduleLevels.getOrDefault(name, log.defaultLevel), log));
+    }
+
+    public static long getDropped() {
+        return log.dropped.sum();
+    }
+
+    // Writes out whatever is buffered and stops the writer
+    public static void close() {
+        log.stop();
+    }
+
+    void append(Level level, String module, String pattern, Object[] args) {
+        if (!buffer.offer(new Entry(System.currentTimeMillis(), level, module, Thread.currentThread().getName(), pattern, args)))
+            dropped.increment();
+    }
+
+    private static Writer open(String file) {
+        try {
+            if (file != null && !file.isBlank())
+                return Files.newBufferedWriter(Path.of(file), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Log: can not open '" + file + "', using the standard output: " + e.getMessage());
+        }
+        // Straight to the descriptor, past System.out and its lock
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private void drain() {
+        StringBuilder line = new StringBuilder(256);
+        boolean dirty = false;
+        while (running) {
+            Entry entry = buffer.poll();
+            if (entry == null) {
+                if (dirty) dirty = !flush();
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            write(line, entry);
+            dirty = true;
+        }
+    }
+
+    private synchronized void stop() {
+        if (!running) return;
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // The writer has stopped; whatever was offered since is written from here
+        StringBuilder line = new StringBuilder(256);
+        for (Entry entry = buffer.poll(); entry != null; entry = buffer.poll()) write(line, entry);
+        flush();
+    }
+
+    private void write(StringBuilder line, Entry entry) {
+        line.setLength(0);
+        line.append(Instant.ofEpochMilli(entry.millis())).append(' ')
+                .append(entry.level()).append(" [").append(entry.thread()).append("] ")
+                .append(entry.module()).append(" - ");
+        format(line, entry.pattern(), entry.args());
+        line.append(System.lineSeparator());
+        try {
+            writer.append(line);
+        } catch (IOException e) {
+            dropped.increment();
+        }
+    }
+
+    private boolean flush() {
+        try {
+            writer.flush();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // SLF4J style "{}" placeholders, filled in order; extra arguments are ignored
+    static void format(StringBuilder out, String pattern, Object[] args) {
+        int from = 0;
+        int argument = 0;
+        while (true) {
+            int placeholder = pattern.indexOf("{}", from);
+            if (placeholder < 0 || args == null || argument == args.length) break;
+            out.append(pattern, from, placeholder);
+            render(out, args[argument++]);
+            from = placeholder + 2;
+        }
+        out.append(pattern, from, pattern.length());
+    }
+
+    // Raw bytes are keys, hashes or ciphertext on this code base: only their size is ever printed
+    private static void render(StringBuilder out, Object argument) {
+        if (argument instanceof byte[] bytes) out.append('<').append(bytes.length).append(" bytes>");
+        else if (argument instanceof Throwable throwable) out.append(throwable.getClass().getSimpleName()).append(": ").append(throwable.getMessage());
+        else out.append(argument);
+    }
+}
@@ -0,0 +1,43 @@
+package pt.tecnico.sirs.telemetry.logging;
+
+// Per module front end of the log pipeline; disabled levels cost one comparison, and enabled ones never format on
+// the calling thread
+public final class Logger {
+    private final String module;
+    private final Level level;
+    private final Log log;
+
+    Logger(String module, Level level, Log log) {
+        this.module = module;
+        this.level = level;
+        this.log = log;
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.compareTo(this.level) >= 0 && level != Level.OFF;
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    public void trace(String pattern, Object... args) {
+        if (isEnabled(Level.TRACE)) log.append(Level.TRACE, module, pattern, args);
+    }
+
+    public void debug(String pattern, Object... args) {
+        if (isEnabled(Level.DEBUG)) log.append(Level.DEBUG, module, pattern, args);
+    }
+
+    public void info(String pattern, Object... args) {
+        if (isEnabled(Level.INFO)) log.append(Level.INFO, module, pattern, args);
+    }
+
+    public void warn(String pattern, Object... args) {
+        if (isEnabled(Level.WARN)) log.append(Level.WARN, module, pattern, args);
+    }
+
+    public void error(String pattern, Object... args) {
+        if (isEnabled(Level.ERROR)) log.append(Level.ERROR, module, pattern, args);
+    }
+}
@@ -0,0 +1,18 @@
+package pt.tecnico.sirs.telemetry.logging;
+
+// Marks a log argument as sensitive: the writer prints a placeholder and never looks at the value
+public final class Redacted {
+    static final String PLACEHOLDER = "<redacted>";
+    private static final Redacted INSTANCE = new Redacted();
+
+    private Redacted() {}
+
+    public static Redacted of(Object ignored) {
+        return INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return PLACEHOLDER;
+    }
+}
@@ -1,5 +1,6 @@
 package pt.tecnico.sirs.userclient;
 
+import pt.tecnico.sirs.telemetry.Tracing;
 import pt.tecnico.sirs.userclient.grpc.UserService;
 import pt.tecnico.sirs.userclient.tools.SecureDocument;
 
@@ -17,6 +18,7 @@ public class CommandParser {
     private static final String DELETE_ACCOUNT = "deleteAccount";
     private static final String BALANCE = "balance";
     private static final String SHOW_EXPENSES = "getMovements";
+    private static final String STREAM_MOVEMENTS = "streamMovements";
     private static final String ADD_EXPENSE = "addExpense";
     private static final String HELP = "help";
     private static final String PROTECT = "protect";
@@ -35,7 +37,8 @@ public class CommandParser {
 
     public void parseInput() {
         boolean exit = false;
-        this.authenticate();
+        // Every command is the root span of its own trace, covering all the calls it makes
+        Tracing.tracer().inSpan("authenticate", this::authenticate);
         try (Scanner scanner = new Scanner(System.in)) {
             while (!exit) {
 
@@ -43,23 +46,28 @@ public class CommandParser {
                 String line = scanner.nextLine().trim();
                 String[] command = line.split(COMMAND_SPLITTER);
 
-                switch (command[0]) {
-                    case CREATE_ACCOUNT -> this.createAccount(command);
-                    case DELETE_ACCOUNT -> this.deleteAccount(command);
-                    case BALANCE -> this.balance(command);
-                    case SHOW_EXPENSES -> this.getMovements(command);
-                    case ADD_EXPENSE -> this.addExpense(command);
-                    case PAYMENT_ORDER -> this.orderPayment(command);
-                    case PROTECT -> this.protect(command);
-                    case CHECK -> this.check(command);
-                    case UNPROTECT -> this.unprotect(command);
-                    case HELP -> this.printUsage();
-                    case EXIT -> exit = true;
-                    default -> {
-                        System.out.println("Bad command!\n");
-                        this.printUsage();
-                    }
-                }
+                if (EXIT.equals(command[0])) exit = true;
+                else Tracing.tracer().inSpan(command[0], () -> this.execute(command));
+            }
+        }
+    }
+
+    private void execute(String[] command) {
+        switch (command[0]) {
+            case CREATE_ACCOUNT -> this.createAccount(command);
+            case DELETE_ACCOUNT -> this.deleteAccount(command);
+            case BALANCE -> this.balance(command);
+            case SHOW_EXPENSES -> this.getMovements(command);
+            case STREAM_MOVEMENTS -> this.streamMovements(command);
+            case ADD_EXPENSE -> this.addExpense(command);
+            case PAYMENT_ORDER -> this.orderPayment(command);
+            case PROTECT -> this.protect(command);
+            case CHECK -> this.check(command);
+            case UNPROTECT -> this.unprotect(command);
+            case HELP -> this.printUsage();
+            default -> {
+                System.out.println("Bad command!\n");
+                this.printUsage();
             }
         }
     }
@@ -116,6 +124,29 @@ public class CommandParser {
         this.userService.getMovements(username, password, OffsetDateTime.now().toString());
     }
 
+    private void streamMovements(String[] command) {
+        if (command.length < 4 || command.length > 7) {
+            this.printUsage();
+            return;
+        }
+
+        String username = command[1];
+        String password = command[2];
+        int pageSize;
+        // A cursor printed by an interrupted stream is always the last argument
+        Long cursor = null;
+        try {
+            pageSize = Integer.parseInt(command[3]);
+            if (command.length % 2 == 1) cursor = Long.parseLong(command[command.length - 1]);
+        } catch (NumberFormatException e) {
+            this.printUsage();
+            return;
+        }
+        String from = command.length >= 6 ? command[4] : null;
+        String to = command.length >= 6 ? command[5] : null;
+        this.userService.streamMovements(username, password, pageSize, from, to, cursor, OffsetDateTime.now().toString());
+    }
+
     private void addExpense(String[] command) {
         if (command.length < 5) {
             this.printUsage();
@@ -182,6 +213,7 @@ public class CommandParser {
                 - deleteAccount <username> <password>
                 - balance <username> <password>
                 - getMovements <username> <password>
+                - streamMovements <username> <password> <page_size> [<from> <to>] [<cursor>]
                 - addExpense <username> <password> <amount> <description>
                 - orderPayment <username> <password> <amount> <recipient> <description>
                 - protect <input_file> <output_file>
@@ -191,6 +223,7 @@ public class CommandParser {
                 - exit
                 Notes: (1) Each username is unique and is linked to only one account.
                        (2) To process payments in accounts with multiple holders they all must place exactly the same order first.
+                       (3) Dates are ISO local date-times, e.g. 2024-01-31T00:00.
                 """);
     }
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package pt.tecnico.sirs.userclient;
 
+import pt.tecnico.sirs.contract.payloads.PayloadCodec;
+import pt.tecnico.sirs.cryptology.Security;
+import pt.tecnico.sirs.telemetry.Tracing;
 import pt.tecnico.sirs.userclient.grpc.UserService;
 import pt.tecnico.sirs.userclient.tools.SecureDocument;
 
@@ -36,6 +39,7 @@ public class UserClientMain {
         final boolean debug = true;
 
         System.out.println(UserClientMain.class.getSimpleName());
+        Tracing.fromEnvironment(UserClientMain.class.getSimpleName());
         UserService userService = new UserService.UserServiceBuilder(
                 System.getenv("server-address"),
                 Integer.parseInt(System.getenv("server-port")),
@@ -47,7 +51,9 @@ public class UserClientMain {
                 System.getenv("path-private-key"),
                 System.getenv("path-server-cert"),
                 debug
-        ).build();
+        ).envelopeMode(Security.Mode.of(System.getenv("envelope")))
+                .payloadFormat(PayloadCodec.Format.of(System.getenv("payload")))
+                .build();
 
         CommandParser parser = new CommandParser(
             userService,
@@ -60,6 +66,7 @@ public class UserClientMain {
         );
 
         parser.parseInput();
+        Tracing.tracer().close();
         if (debug) System.out.println("UserClient: Shutting down");
     }
 }
\ No newline at end of file
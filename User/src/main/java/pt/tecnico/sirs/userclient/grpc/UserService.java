@@ -6,25 +6,30 @@ import pt.tecnico.sirs.contract.bankserver.BankingServiceGrpc;
 import pt.tecnico.sirs.contract.authenticationserver.AuthenticationServer;
 import pt.tecnico.sirs.contract.authenticationserver.AuthenticationServerServiceGrpc;
 import pt.tecnico.sirs.contract.bankserver.BankServer.*;
+import pt.tecnico.sirs.contract.payloads.PayloadCodec;
+import pt.tecnico.sirs.contract.payloads.Payloads.*;
 import pt.tecnico.sirs.cryptology.Base;
 import pt.tecnico.sirs.cryptology.Operations;
+import pt.tecnico.sirs.cryptology.Security;
+import pt.tecnico.sirs.telemetry.TracingClientInterceptor;
 import pt.tecnico.sirs.userclient.grpc.crypto.BankingClientCryptographicManager;
 import pt.tecnico.sirs.utils.Utils;
 import com.google.protobuf.ByteString;
 import pt.tecnico.sirs.utils.exceptions.TamperedMessageException;
 
 import java.io.*;
-import java.nio.file.Paths;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.nio.file.Files;
 
 import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 
 public class UserService {
     public static class UserServiceBuilder {
@@ -33,6 +38,8 @@ public class UserService {
         private final Integer port;
         private final BankingClientCryptographicManager crypto;
         private final ChannelCredentials credentials;
+        private Security.Mode envelopeMode = Security.Mode.SIGNED;
+        private PayloadCodec.Format payloadFormat = PayloadCodec.Format.JSON;
         private ManagedChannel bankChannel;
         private ManagedChannel authenticationServerChannel;
         String authenticationServerAddress;
@@ -66,18 +73,28 @@ public class UserService {
                     .build();
         }
 
+        public UserServiceBuilder envelopeMode(Security.Mode envelopeMode) {
+            this.envelopeMode = envelopeMode;
+            return this;
+        }
+
+        public UserServiceBuilder payloadFormat(PayloadCodec.Format payloadFormat) {
+            this.payloadFormat = payloadFormat;
+            return this;
+        }
+
         public UserService build() {
             this.authenticationServerChannel = Grpc.newChannelBuilderForAddress(
                             this.authenticationServerAddress,
                             this.authenticationServerPort,
                             this.credentials
-            ).build();
+            ).intercept(new TracingClientInterceptor()).build();
 
             this.bankChannel = Grpc.newChannelBuilderForAddress(
                             this.host,
                             this.port,
                             this.credentials
-            ).build();
+            ).intercept(new TracingClientInterceptor()).build();
 
             return new UserService(this);
         }
@@ -85,6 +102,8 @@ public class UserService {
 
     private final boolean debug;
     private final BankingClientCryptographicManager crypto;
+    private final Security.Mode envelopeMode;
+    private final PayloadCodec.Format payloadFormat;
     private final AuthenticationServerServiceGrpc.AuthenticationServerServiceBlockingStub authenticationServerServiceStub;
     private final BankingServiceGrpc.BankingServiceBlockingStub bankingServiceStub;
     private final Logger logger;
@@ -92,6 +111,8 @@ public class UserService {
     private UserService(UserServiceBuilder builder) {
         this.crypto = builder.crypto;
         this.debug = builder.debug;
+        this.envelopeMode = builder.envelopeMode;
+        this.payloadFormat = builder.payloadFormat;
         this.logger = Logger.getLogger("UserService");
         this.authenticationServerServiceStub = AuthenticationServerServiceGrpc.newBlockingStub(builder.authenticationServerChannel);
         this.bankingServiceStub = BankingServiceGrpc.newBlockingStub(builder.bankChannel);
@@ -122,8 +143,8 @@ public class UserService {
             if (!ticketJson.getString("target").equals("database") || !ticketJson.getString("timestampString").equals(timestampString))
                 throw new TamperedMessageException();
             // Save session key and session iv
-            Files.write(Paths.get("resources/crypto/session/sessionKey"), Utils.hexToByte(ticketJson.getString("sessionKey")));
-            Files.write(Paths.get("resources/crypto/session/iv"), Utils.hexToByte(ticketJson.getString("sessionIv")));
+            Base.writeKeyMaterial("resources/crypto/session/sessionKey", Utils.hexToByte(ticketJson.getString("sessionKey")));
+            Base.writeKeyMaterial("resources/crypto/session/iv", Utils.hexToByte(ticketJson.getString("sessionIv")));
 
             // Needham-Schroeder step 3
             BankServer.AuthenticateResponse authenticateDatabaseResponse =
@@ -133,26 +154,35 @@ public class UserService {
                             Json.createObjectBuilder()
                                 .add("ticket", ticketJson.getJsonString("targetTicket"))
                                 .add("timestampString", timestampString)
+                                .add("envelope", envelopeMode.name())
+                                .add("payload", payloadFormat.name())
                                 .build()
             ))).build());
 
-            // Needham-Schroeder steps 4 and 5
+            // Needham-Schroeder step 4
+            JsonObject challengeJson = Utils.deserializeJson(Operations.decryptData(
+                Base.readSecretKey("resources/crypto/session/sessionKey"),
+                authenticateDatabaseResponse.getResponse().toByteArray(),
+                Base.readIv("resources/crypto/session/iv")
+            ));
+            // Servers that predate envelope negotiation do not acknowledge it and only understand signed envelopes
+            crypto.setMode(Security.Mode.of(challengeJson.getString("envelope", Security.Mode.SIGNED.name())));
+            // Likewise servers that predate the typed payloads only understand JSON
+            crypto.setFormat(PayloadCodec.Format.of(challengeJson.getString("payload", PayloadCodec.Format.JSON.name())));
+            crypto.setSession(UUID.fromString(challengeJson.getString("session")));
+
+            // Needham-Schroeder step 5
             StillAliveResponse ignored = bankingServiceStub.stillAlive(StillAliveRequest.newBuilder().setRequest(
-                ByteString.copyFrom(
+                crypto.getSession().concat(ByteString.copyFrom(
                     Operations.encryptData(
                         Base.readSecretKey("resources/crypto/session/sessionKey"),
                         Utils.serializeJson(
                             Json.createObjectBuilder()
-                                .add(
-                                    "nonce",
-                                    Utils.deserializeJson(Operations.decryptData(
-                                        Base.readSecretKey("resources/crypto/session/sessionKey"),
-                                        authenticateDatabaseResponse.getResponse().toByteArray(),
-                                        Base.readIv("resources/crypto/session/iv")
-                                    )).getInt("nonce") - 1
-                                ).build()),
+                                .add("nonce", challengeJson.getInt("nonce") - 1)
+                                .build()),
                         Base.readIv("resources/crypto/session/iv")
-            ))).build());
+            )))).build());
+            if (debug) System.out.printf("\tUserService: session envelopes are %s, payloads are %s\n", crypto.getMode(), crypto.getFormat());
         } catch (StatusRuntimeException e) {
             logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
         } catch (Exception e) {
@@ -164,33 +194,42 @@ public class UserService {
         try {
             if (debug) System.out.println("\tUserService: encoding create account request");
             
-            JsonArrayBuilder jsonArrayBuilder = Json.createArrayBuilder();
-            for (String username : usernames) {
-                jsonArrayBuilder.add(username);
-            }
-            JsonArray usernamesJson = jsonArrayBuilder.build();
-
-            jsonArrayBuilder = Json.createArrayBuilder();
-            for (String password : passwords) {
-                jsonArrayBuilder.add(crypto.encryptPassword(password));
+            ByteString requestPayload;
+            if (crypto.getFormat() == PayloadCodec.Format.PROTOBUF) {
+                CreateAccountPayload.Builder payloadBuilder = CreateAccountPayload.newBuilder()
+                    .addAllUsernames(usernames)
+                    .setTimestamp(PayloadCodec.timestamp(OffsetDateTime.parse(timestampString)));
+                for (String password : passwords) {
+                    payloadBuilder.addPasswords(crypto.hashPassword(password));
+                }
+                requestPayload = payloadBuilder.build().toByteString();
+            } else {
+                JsonArrayBuilder jsonArrayBuilder = Json.createArrayBuilder();
+                for (String username : usernames) {
+                    jsonArrayBuilder.add(username);
+                }
+                JsonArray usernamesJson = jsonArrayBuilder.build();
+
+                jsonArrayBuilder = Json.createArrayBuilder();
+                for (String password : passwords) {
+                    jsonArrayBuilder.add(crypto.encryptPassword(password));
+                }
+                JsonArray passwordsJson = jsonArrayBuilder.build();
+
+                requestPayload = ByteString.copyFrom(Utils.serializeJson(Json.createObjectBuilder()
+                    .add("usernames", usernamesJson)
+                    .add("passwords", passwordsJson)
+                    .add("timestampString", timestampString)
+                    .build()
+                ));
             }
-            JsonArray passwordsJson = jsonArrayBuilder.build();
-
-
-            byte[] requestJson = Utils.serializeJson(Json.createObjectBuilder()
-                .add("usernames", usernamesJson)
-                .add("passwords", passwordsJson)
-                .add("timestampString", timestampString)
-                .build()
-            );
  
             if (debug) System.out.println("\tUserService: making rpc");
 
             CreateAccountResponse ignored = bankingServiceStub.createAccount(crypto.encrypt(
                 CreateAccountRequest.newBuilder()
-                .setRequest(
-                    ByteString.copyFrom(requestJson)
-                ).build())
+                .setRequest(requestPayload)
+                .build())
             );
 
             if (debug) System.out.println("\tUserService: processing create account response");
@@ -205,18 +244,19 @@ public class UserService {
     public void deleteAccount(String username, String password, String timestampString) {
         try {
             if (debug) System.out.println("\tUserService: encoding delete account request");
-            byte[] requestJson = Utils.serializeJson(
-                Utils.createJson(
-                    List.of("username", "password", "timestampString"),
-                    List.of(username, crypto.encryptPassword(password), timestampString)
-            ));
+            ByteString requestPayload = crypto.getFormat() == PayloadCodec.Format.PROTOBUF
+                ? credentials(username, password, timestampString).toByteString()
+                : ByteString.copyFrom(Utils.serializeJson(
+                    Utils.createJson(
+                        List.of("username", "password", "timestampString"),
+                        List.of(username, crypto.encryptPassword(password), timestampString)
+                )));
 
             if (debug) System.out.println("\tUserService: making rpc");
             DeleteAccountResponse ignored = bankingServiceStub.deleteAccount(crypto.encrypt(
                 DeleteAccountRequest.newBuilder()
-                .setRequest(
-                    ByteString.copyFrom(requestJson)
-                ).build())
+                .setRequest(requestPayload)
+                .build())
             );
 
             if (debug) System.out.println("\tUserService: processing delete account response");
@@ -230,26 +270,29 @@ public class UserService {
     public void balance(String username, String password, String timestampString) {
         try {
             if (debug) System.out.println("\tUserService: encoding delete account request");
-            byte[] requestJson = Utils.serializeJson(
-                Utils.createJson(
-                    List.of("username", "password", "timestampString"),
-                    List.of(username, crypto.encryptPassword(password), timestampString)
-            ));
+            ByteString requestPayload = crypto.getFormat() == PayloadCodec.Format.PROTOBUF
+                ? credentials(username, password, timestampString).toByteString()
+                : ByteString.copyFrom(Utils.serializeJson(
+                    Utils.createJson(
+                        List.of("username", "password", "timestampString"),
+                        List.of(username, crypto.encryptPassword(password), timestampString)
+                )));
 
             if (debug) System.out.println("\tUserService: making rpc");
 
             BalanceResponse balanceResponse = bankingServiceStub.balance(crypto.encrypt(
                 BalanceRequest.newBuilder()
-                .setRequest(
-                    ByteString.copyFrom(requestJson)
-                ).build())
+                .setRequest(requestPayload)
+                .build())
             );
 
-            if (!crypto.check(balanceResponse)) throw new RuntimeException("Message contents were tampered with");
-
             if (debug) System.out.println("\tUserService: processing balance response");
-            JsonObject responseJson = Utils.deserializeJson(crypto.decrypt(balanceResponse).getResponse().toByteArray());
-            System.out.println(responseJson.getString("balance"));
+            if (crypto.getFormat() == PayloadCodec.Format.PROTOBUF) {
+                System.out.println(PayloadCodec.amount(BalancePayload.parseFrom(crypto.open(balanceResponse)).getBalance()));
+            } else {
+                JsonObject responseJson = Utils.deserializeJson(crypto.open(balanceResponse));
+                System.out.println(responseJson.getString("balance"));
+            }
         } catch (StatusRuntimeException e) {
             logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
         } catch (Exception e) {
@@ -260,28 +303,33 @@ public class UserService {
     public void getMovements(String username, String password, String timestampString) {
         try {
             if (debug) System.out.println("\tUserService: encoding show expenses request");
-            byte[] requestJson = Utils.serializeJson(
-                Utils.createJson(
-                    List.of("username", "password", "timestampString"),
-                    List.of(username, crypto.encryptPassword(password), timestampString)
-            ));
+            ByteString requestPayload = crypto.getFormat() == PayloadCodec.Format.PROTOBUF
+                ? credentials(username, password, timestampString).toByteString()
+                : ByteString.copyFrom(Utils.serializeJson(
+                    Utils.createJson(
+                        List.of("username", "password", "timestampString"),
+                        List.of(username, crypto.encryptPassword(password), timestampString)
+                )));
 
             if (debug) System.out.println("\tUserService: making rpc");
 
             GetMovementsResponse getAccountMovementsResponse = bankingServiceStub.getMovements(crypto.encrypt(
                 GetMovementsRequest.newBuilder()
-                .setRequest(
-                    ByteString.copyFrom(requestJson)
-                ).build())
+                .setRequest(requestPayload)
+                .build())
             );
 
-            if (!crypto.check(getAccountMovementsResponse)) throw new RuntimeException("Message contents were tampered with");
-
             if (debug) System.out.println("\tUserService: processing get account movements response");
-            JsonObject responseJson = Utils.deserializeJson(crypto.decrypt(getAccountMovementsResponse).getResponse().toByteArray());
-            for(int i = 0; i < responseJson.getJsonArray("movements").size(); i++) {
-                JsonObject movement = responseJson.getJsonArray("movements").getJsonObject(i);
-                System.out.printf("Movement %d\n\tCurrency: %s\n\tDate: %s\n\tValue: %s\n\tDescription: %s\n", i + 1, movement.getString("currency"), movement.getString("date"), movement.getString("value"), movement.getString("description"));
+            if (crypto.getFormat() == PayloadCodec.Format.PROTOBUF) {
+                MovementsPayload responsePayload = MovementsPayload.parseFrom(crypto.open(getAccountMovementsResponse));
+                for (int i = 0; i < responsePayload.getMovementsCount(); i++)
+                    printMovement(i + 1, responsePayload.getMovements(i));
+            } else {
+                JsonObject responseJson = Utils.deserializeJson(crypto.open(getAccountMovementsResponse));
+                for(int i = 0; i < responseJson.getJsonArray("movements").size(); i++) {
+                    JsonObject movement = responseJson.getJsonArray("movements").getJsonObject(i);
+                    System.out.printf("Movement %d\n\tCurrency: %s\n\tDate: %s\n\tValue: %s\n\tDescription: %s\n", i + 1, movement.getString("currency"), movement.getString("date"), movement.getString("value"), movement.getString("description"));
+                }
             }
         } catch (StatusRuntimeException e) {
             logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
@@ -290,21 +338,92 @@ public class UserService {
         }
     }
 
+    // Prints every page as soon as it arrives instead of waiting for the whole history, and the cursor to resume from
+    // when the stream ends before its last page
+    public void streamMovements(String username, String password, int pageSize, String from, String to, Long cursor, String timestampString) {
+        Long resumeFrom = cursor;
+        boolean complete = false;
+        try {
+            if (debug) System.out.println("\tUserService: encoding stream movements request");
+            boolean typed = crypto.getFormat() == PayloadCodec.Format.PROTOBUF;
+            ByteString requestPayload;
+            if (typed) {
+                StreamMovementsPayload.Builder payloadBuilder = StreamMovementsPayload.newBuilder()
+                        .setCredentials(credentials(username, password, timestampString))
+                        .setPageSize(pageSize);
+                if (from != null) payloadBuilder.setFrom(PayloadCodec.timestamp(LocalDateTime.parse(from)));
+                if (to != null) payloadBuilder.setTo(PayloadCodec.timestamp(LocalDateTime.parse(to)));
+                if (cursor != null) payloadBuilder.setCursor(MovementCursor.newBuilder().setMovement(cursor));
+                requestPayload = payloadBuilder.build().toByteString();
+            } else {
+                JsonObjectBuilder requestBuilder = Json.createObjectBuilder()
+                        .add("username", username)
+                        .add("password", crypto.encryptPassword(password))
+                        .add("pageSize", pageSize)
+                        .add("timestampString", timestampString);
+                if (from != null) requestBuilder.add("from", from);
+                if (to != null) requestBuilder.add("to", to);
+                if (cursor != null) requestBuilder.add("cursor", Json.createObjectBuilder().add("movement", cursor));
+                requestPayload = ByteString.copyFrom(Utils.serializeJson(requestBuilder.build()));
+            }
+
+            if (debug) System.out.println("\tUserService: making rpc");
+            Iterator<StreamMovementsResponse> pages = bankingServiceStub.streamMovements(crypto.encrypt(
+                StreamMovementsRequest.newBuilder()
+                .setRequest(requestPayload)
+                .build())
+            );
+
+            int index = 0;
+            while (pages.hasNext()) {
+                if (debug) System.out.println("\tUserService: processing stream movements page");
+                if (typed) {
+                    MovementPagePayload pagePayload = MovementPagePayload.parseFrom(crypto.open(pages.next()));
+                    for (MovementPayload movement : pagePayload.getMovementsList())
+                        printMovement(++index, movement);
+                    if (pagePayload.hasCursor()) resumeFrom = pagePayload.getCursor().getMovement();
+                    complete = pagePayload.getLast();
+                    continue;
+                }
+                JsonObject pageJson = Utils.deserializeJson(crypto.open(pages.next()));
+                JsonArray movements = pageJson.getJsonArray("movements");
+                for (int i = 0; i < movements.size(); i++) {
+                    JsonObject movement = movements.getJsonObject(i);
+                    System.out.printf("Movement %d\n\tCurrency: %s\n\tDate: %s\n\tValue: %s\n\tDescription: %s\n", ++index, movement.getString("currency"), movement.getString("date"), movement.getString("value"), movement.getString("description"));
+                }
+                if (pageJson.containsKey("cursor")) resumeFrom = pageJson.getJsonObject("cursor").getJsonNumber("movement").longValueExact();
+                complete = pageJson.getBoolean("last");
+            }
+        } catch (StatusRuntimeException e) {
+            logger.log(Level.WARNING, "RPC failed: {0}", e.getStatus());
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, Arrays.toString(e.getStackTrace()), e);
+        }
+        if (!complete && resumeFrom != null)
+            System.out.printf("Stream ended early, resume from cursor %d%n", resumeFrom);
+    }
+
     public void addExpense(String username, String password, String date, String amount, String description, String timestampString) {
         try {
             if (debug) System.out.println("\tUserService: encoding add expense request");
-            byte[] requestJson = Utils.serializeJson(
-                Utils.createJson(
-                    List.of("username", "password", "date", "amount", "description", "timestampString"),
-                    List.of(username, crypto.encryptPassword(password), date, amount, description, timestampString)
-            ));
+            ByteString requestPayload = crypto.getFormat() == PayloadCodec.Format.PROTOBUF
+                ? ExpensePayload.newBuilder()
+                    .setCredentials(credentials(username, password, timestampString))
+                    .setDate(PayloadCodec.timestamp(LocalDateTime.parse(date)))
+                    .setAmount(PayloadCodec.amount(new BigDecimal(amount)))
+                    .setDescription(description)
+                    .build().toByteString()
+                : ByteString.copyFrom(Utils.serializeJson(
+                    Utils.createJson(
+                        List.of("username", "password", "date", "amount", "description", "timestampString"),
+                        List.of(username, crypto.encryptPassword(password), date, amount, description, timestampString)
+                )));
 
             if (debug) System.out.println("\tUserService: making rpc");
             AddExpenseResponse ignored = bankingServiceStub.addExpense(crypto.encrypt(
                 AddExpenseRequest.newBuilder()
-                .setRequest(
-                    ByteString.copyFrom(requestJson)
-                ).build())
+                .setRequest(requestPayload)
+                .build())
             );
 
             if (debug) System.out.println("\tUserService: processing add expense response");
@@ -318,18 +437,25 @@ public class UserService {
     public void paymentOrder(String username, String password, String date, String amount, String description, String recipient, String timestampString) {
         try {
             if (debug) System.out.println("\tUserService: encoding payment order request");
-            byte[] requestJson = Utils.serializeJson(
-                Utils.createJson(
-                    List.of("username", "password", "date", "amount", "description", "recipient", "timestampString"),
-                    List.of(username, crypto.encryptPassword(password), date, amount, description, recipient, timestampString)
-            ));
+            ByteString requestPayload = crypto.getFormat() == PayloadCodec.Format.PROTOBUF
+                ? PaymentPayload.newBuilder()
+                    .setCredentials(credentials(username, password, timestampString))
+                    .setDate(PayloadCodec.timestamp(LocalDateTime.parse(date)))
+                    .setAmount(PayloadCodec.amount(new BigDecimal(amount)))
+                    .setDescription(description)
+                    .setRecipient(recipient)
+                    .build().toByteString()
+                : ByteString.copyFrom(Utils.serializeJson(
+                    Utils.createJson(
+                        List.of("username", "password", "date", "amount", "description", "recipient", "timestampString"),
+                        List.of(username, crypto.encryptPassword(password), date, amount, description, recipient, timestampString)
+                )));
 
             if (debug) System.out.println("\tUserService: making rpc");
             OrderPaymentResponse ignored = bankingServiceStub.orderPayment(crypto.encrypt(
                 OrderPaymentRequest.newBuilder()
-                .setRequest(
-                    ByteString.copyFrom(requestJson)
-                ).build())
+                .setRequest(requestPayload)
+                .build())
             );
 
             if (debug) System.out.println("\tUserService: processing payment order response");
@@ -340,4 +466,16 @@ public class UserService {
         }
     }
 
+    private Credentials credentials(String username, String password, String timestampString) throws Exception {
+        return Credentials.newBuilder()
+            .setUsername(username)
+            .setPassword(crypto.hashPassword(password))
+            .setTimestamp(PayloadCodec.timestamp(OffsetDateTime.parse(timestampString)))
+            .build();
+    }
+
+    private static void printMovement(int index, MovementPayload movement) {
+        System.out.printf("Movement %d\n\tCurrency: %s\n\tDate: %s\n\tValue: %s\n\tDescription: %s\n", index, movement.getCurrency(), PayloadCodec.localDateTime(movement.getDate()), PayloadCodec.amount(movement.getValue()), movement.getDescription());
+    }
+
 }
\ No newline at end of file
@@ -1,14 +1,22 @@
 package pt.tecnico.sirs.userclient.grpc.crypto;
 
+import com.google.protobuf.ByteString;
 import pt.tecnico.sirs.contract.bankserver.BankServer.*;
+import pt.tecnico.sirs.contract.payloads.PayloadCodec;
 import pt.tecnico.sirs.cryptology.Base;
+import pt.tecnico.sirs.cryptology.Security;
 import pt.tecnico.sirs.cryptology.Operations;
 import pt.tecnico.sirs.utils.Utils;
 
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
 
 public class BankingClientCryptographicManager extends BankingClientCryptographicCore implements Base.KeyManager {
     private final int MOCK_HASH = 0;
+    private volatile Security.Mode mode = Security.Mode.SIGNED;
+    private volatile PayloadCodec.Format format = PayloadCodec.Format.JSON;
+    private volatile ByteString session = ByteString.EMPTY;
     public BankingClientCryptographicManager(
             String ivPath,
             String secretKeyPath,
@@ -22,91 +30,105 @@ public class BankingClientCryptographicManager extends BankingClientCryptographi
         this.addPrivateKeyPath(MOCK_HASH, privateKeyPath);
     }
 
-    public String encryptPassword(String password) throws NoSuchAlgorithmException {
-        return Utils.byteToHex(Operations.hash(password.getBytes()));
+    public Security.Mode getMode() {
+        return mode;
     }
 
-    public <P> P encrypt(P object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public void setMode(Security.Mode mode) {
+        this.mode = mode;
     }
 
-    public <P> boolean check(P object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public PayloadCodec.Format getFormat() {
+        return format;
     }
 
-    public <P> P decrypt(P object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public void setFormat(PayloadCodec.Format format) {
+        this.format = format;
     }
 
-    public BalanceRequest encrypt(BalanceRequest object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    // Id of the database session, prefixed to every request envelope
+    public ByteString getSession() {
+        return session;
     }
 
-    public boolean check(BalanceResponse object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public void setSession(UUID session) {
+        this.session = ByteString.copyFrom(
+                ByteBuffer.allocate(Long.BYTES * 2)
+                        .putLong(session.getMostSignificantBits())
+                        .putLong(session.getLeastSignificantBits())
+                        .flip()
+        );
     }
 
-    public BalanceResponse decrypt(BalanceResponse object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public String encryptPassword(String password) throws NoSuchAlgorithmException {
+        return Utils.byteToHex(Operations.hash(password.getBytes()));
     }
 
-    public CreateAccountRequest encrypt(CreateAccountRequest object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public ByteString hashPassword(String password) throws NoSuchAlgorithmException {
+        return ByteString.copyFrom(Operations.hash(password.getBytes()));
     }
 
-    public boolean check(CreateAccountResponse object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public <P> P encrypt(P object) throws Exception {
+        return encrypt(object, session, mode, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public CreateAccountResponse decrypt(CreateAccountResponse object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public <P> ByteBuffer open(P object) throws Exception {
+        return open(object, mode, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public DeleteAccountRequest encrypt(DeleteAccountRequest object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public BalanceRequest encrypt(BalanceRequest object) throws Exception {
+        return encrypt(object, session, mode, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    }
+
+    public ByteBuffer open(BalanceResponse object) throws Exception {
+        return open(object, mode, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public boolean check(DeleteAccountResponse object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public CreateAccountRequest encrypt(CreateAccountRequest object) throws Exception {
+        return encrypt(object, session, mode, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public DeleteAccountResponse decrypt(DeleteAccountResponse object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public ByteBuffer open(CreateAccountResponse object) throws Exception {
+        return open(object, mode, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public GetMovementsRequest encrypt(GetMovementsRequest object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public DeleteAccountRequest encrypt(DeleteAccountRequest object) throws Exception {
+        return encrypt(object, session, mode, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public boolean check(GetMovementsResponse object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public ByteBuffer open(DeleteAccountResponse object) throws Exception {
+        return open(object, mode, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public GetMovementsResponse decrypt(GetMovementsResponse object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public GetMovementsRequest encrypt(GetMovementsRequest object) throws Exception {
+        return encrypt(object, session, mode, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public AddExpenseRequest encrypt(AddExpenseRequest object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public ByteBuffer open(GetMovementsResponse object) throws Exception {
+        return open(object, mode, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public boolean check(AddExpenseResponse object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public StreamMovementsRequest encrypt(StreamMovementsRequest object) throws Exception {
+        return encrypt(object, session, mode, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public AddExpenseResponse decrypt(AddExpenseResponse object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public ByteBuffer open(StreamMovementsResponse object) throws Exception {
+        return open(object, mode, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public OrderPaymentRequest encrypt(OrderPaymentRequest object) throws Exception {
-        return encrypt(object, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public AddExpenseRequest encrypt(AddExpenseRequest object) throws Exception {
+        return encrypt(object, session, mode, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public boolean check(OrderPaymentResponse object) throws Exception {
-        return check(object, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public ByteBuffer open(AddExpenseResponse object) throws Exception {
+        return open(object, mode, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    }
+
+    public OrderPaymentRequest encrypt(OrderPaymentRequest object) throws Exception {
+        return encrypt(object, session, Security.Mode.SIGNED, getSecretKeyPath(MOCK_HASH), getPrivateKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 
-    public OrderPaymentResponse decrypt(OrderPaymentResponse object) throws Exception {
-        return decrypt(object, getSecretKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
+    public ByteBuffer open(OrderPaymentResponse object) throws Exception {
+        return open(object, Security.Mode.SIGNED, getSecretKeyPath(MOCK_HASH), getPublicKeyPath(MOCK_HASH), getIvPath(MOCK_HASH));
     }
 }